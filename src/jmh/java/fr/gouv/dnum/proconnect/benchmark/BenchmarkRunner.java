@@ -0,0 +1,99 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lance les benchmarks en mono-thread puis sur tous les cœurs, avec le profileur GC
+ * (débit, temps moyen et taux d'allocation).
+ * <p>
+ * Les résultats sont écrits dans {@code target/jmh/} et comparés, s'ils existent, à ceux
+ * de {@code src/jmh/baseline/}. L'option {@code --save-baseline} remplace la référence.
+ */
+public final class BenchmarkRunner {
+
+    private static final Path RESULTS_DIR = Path.of("target", "jmh");
+    private static final Path BASELINE_DIR = Path.of("src", "jmh", "baseline");
+    private static final String SAVE_BASELINE = "--save-baseline";
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws Exception {
+        // exec:exec transmet les options JMH en un seul argument
+        List<String> jmhArgs = new ArrayList<>();
+        for (String arg : args) {
+            jmhArgs.addAll(Arrays.asList(arg.trim().split("\\s+")));
+        }
+        jmhArgs.removeIf(String::isEmpty);
+        boolean saveBaseline = jmhArgs.remove(SAVE_BASELINE);
+
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(String[]::new));
+        Files.createDirectories(RESULTS_DIR);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : new int[]{1, cores}) {
+            String fileName = "results-" + (threads == 1 ? "1t" : "mt") + ".json";
+            Path result = RESULTS_DIR.resolve(fileName);
+
+            new Runner(new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.toString())
+                    .build()).run();
+
+            Path baseline = BASELINE_DIR.resolve(fileName);
+            if (Files.exists(baseline)) {
+                compare(baseline, result, threads);
+            }
+            if (saveBaseline) {
+                Files.createDirectories(BASELINE_DIR);
+                Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Afficher le rapport entre le score courant et celui de référence pour chaque benchmark.
+     */
+    private static void compare(Path baseline, Path current, int threads) throws IOException {
+        Map<String, Double> reference = scores(baseline);
+        System.out.printf("%nComparaison avec la référence (%d thread(s))%n", threads);
+        scores(current).forEach((name, score) -> {
+            Double before = reference.get(name);
+            if (before != null && before != 0) {
+                System.out.printf("  %-90s %12.3f -> %12.3f  (x%.2f)%n", name, before, score, score / before);
+            }
+        });
+    }
+
+    private static Map<String, Double> scores(Path file) throws IOException {
+        Map<String, Double> scores = new HashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file.toFile())) {
+            String name = run.path("benchmark").asText() + " [" + run.path("mode").asText() + "]";
+            scores.put(name, run.path("primaryMetric").path("score").asDouble());
+            run.path("secondaryMetrics").fields().forEachRemaining(metric -> {
+                if (metric.getKey().equals("gc.alloc.rate.norm")) {
+                    scores.put(name + " gc.alloc.rate.norm", metric.getValue().path("score").asDouble());
+                }
+            });
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,50 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import fr.gouv.dnum.proconnect.web.jwt.BulkJwtVerifier;
+import fr.gouv.dnum.proconnect.web.jwt.JwtAlgorithmEnum;
+import fr.gouv.dnum.proconnect.web.jwt.JwtVerification;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vérification d'un lot de jetons ES256 ({@link BulkJwtVerifier}) selon le nombre de threads
+ * du pool ({@code 0} : tous les cœurs). Le score est exprimé par jeton.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(BulkJwtVerificationBenchmark.BATCH_SIZE)
+public class BulkJwtVerificationBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private BulkJwtVerifier verifier;
+    private List<String> tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        JwtFixtures fixtures = new JwtFixtures();
+        fixtures.installKeyStore();
+        tokens = Collections.nCopies(BATCH_SIZE, fixtures.es256Token());
+        verifier = parallelism > 0 ? new BulkJwtVerifier(parallelism) : BulkJwtVerifier.withAvailableProcessors();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        verifier.close();
+    }
+
+    @Benchmark
+    public List<JwtVerification> verifyBatch() {
+        return verifier.verifyAll(tokens, JwtAlgorithmEnum.ES256);
+    }
+}
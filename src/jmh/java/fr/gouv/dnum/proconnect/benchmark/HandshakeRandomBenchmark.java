@@ -0,0 +1,45 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import fr.gouv.dnum.proconnect.web.handshake.HandshakeRandom;
+import fr.gouv.dnum.proconnect.web.oidc.AuthorizeUrlTemplate;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadata;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Génération du state (le nonce est tiré de la même façon) et de l'URL d'autorisation : un {@link SecureRandom} partagé
+ * (comportement précédent) face à {@link HandshakeRandom}. Exécuté en mono-thread puis sur
+ * tous les cœurs par {@link BenchmarkRunner}, il montre la contention du générateur partagé.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandshakeRandomBenchmark {
+
+    private final SecureRandom sharedSecureRandom = new SecureRandom();
+    private final HandshakeRandom handshakeRandom = new HandshakeRandom();
+    private final AuthorizeUrlTemplate template = AuthorizeUrlTemplate.of(OidcMetadata.defaults().authorizationEndpoint());
+
+    @Benchmark
+    public String sharedSecureRandomState() {
+        byte[] bytes = new byte[16];
+        sharedSecureRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    @Benchmark
+    public String handshakeRandomState() {
+        return handshakeRandom.nextState();
+    }
+
+    @Benchmark
+    public String authorizeUrl() {
+        return template.build(handshakeRandom.nextNonce(), handshakeRandom.nextState());
+    }
+}
@@ -0,0 +1,33 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import fr.gouv.dnum.proconnect.web.jwt.Jwk;
+import fr.gouv.dnum.proconnect.web.jwt.JwksParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyse et indexation d'un document JWKS, telle qu'effectuée à chaque rafraîchissement du cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwksParsingBenchmark {
+
+    private byte[] jwks;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        jwks = new JwtFixtures().jwksBytes();
+    }
+
+    @Benchmark
+    public Map<String, Jwk> parseJwks() throws Exception {
+        return JwksParser.parse(new ByteArrayInputStream(jwks));
+    }
+}
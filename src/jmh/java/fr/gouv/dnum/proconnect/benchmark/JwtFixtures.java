@@ -0,0 +1,115 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import fr.gouv.dnum.proconnect.Constants;
+import fr.gouv.dnum.proconnect.web.jwt.JwksKeyStore;
+import fr.gouv.dnum.proconnect.web.jwt.JwtUtils;
+import io.jsonwebtoken.Jwts;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Clés et jetons locaux utilisés par les benchmarks : aucun appel réseau n'est effectué.
+ */
+public final class JwtFixtures {
+
+    public static final String ES256_KID = "bench-es256";
+    public static final String RS256_KID = "bench-rs256";
+
+    private final KeyPair ecKeyPair;
+    private final KeyPair rsaKeyPair;
+    private final String jwks;
+    private final String es256Token;
+    private final String rs256Token;
+
+    public JwtFixtures() throws Exception {
+        KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+        ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        ecKeyPair = ecGenerator.generateKeyPair();
+
+        KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+        rsaGenerator.initialize(2048);
+        rsaKeyPair = rsaGenerator.generateKeyPair();
+
+        ECPublicKey ecPublicKey = (ECPublicKey) ecKeyPair.getPublic();
+        RSAPublicKey rsaPublicKey = (RSAPublicKey) rsaKeyPair.getPublic();
+        jwks = "{\"keys\":["
+                + "{\"kty\":\"EC\",\"use\":\"sig\",\"alg\":\"ES256\",\"kid\":\"" + ES256_KID + "\",\"crv\":\"P-256\","
+                + "\"x\":\"" + base64Url(ecPublicKey.getW().getAffineX(), 32) + "\","
+                + "\"y\":\"" + base64Url(ecPublicKey.getW().getAffineY(), 32) + "\"},"
+                + "{\"kty\":\"RSA\",\"use\":\"sig\",\"alg\":\"RS256\",\"kid\":\"" + RS256_KID + "\","
+                + "\"n\":\"" + base64Url(rsaPublicKey.getModulus(), 256) + "\","
+                + "\"e\":\"" + base64Url(rsaPublicKey.getPublicExponent(), 0) + "\"}"
+                + "]}";
+
+        es256Token = sign(ES256_KID, ecKeyPair);
+        rs256Token = sign(RS256_KID, rsaKeyPair);
+    }
+
+    /**
+     * Installer dans {@link JwtUtils} un magasin de clés servant le JWKS local.
+     */
+    public void installKeyStore() {
+        JwtUtils.setKeyStore(new JwksKeyStore(() -> URI.create("http://localhost/jwks"),
+                uri -> new ByteArrayInputStream(jwksBytes()),
+                Duration.ofDays(1), Duration.ofHours(1), Duration.ofDays(1), Clock.systemUTC()));
+    }
+
+    public String jwks() {
+        return jwks;
+    }
+
+    public byte[] jwksBytes() {
+        return jwks.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String es256Token() {
+        return es256Token;
+    }
+
+    public String rs256Token() {
+        return rs256Token;
+    }
+
+    private static String sign(String kid, KeyPair keyPair) {
+        return Jwts.builder()
+                .header().keyId(kid).and()
+                .issuer(Constants.ProConnect.ENVIRONMENT + "/api/v2")
+                .audience().add(Constants.ProConnect.CLIENT_ID).and()
+                .subject("c2e8f5a4-bench")
+                .claim("nonce", "123456789")
+                .claim("email", "test@fia1.fr")
+                .claim("given_name", "Jean")
+                .claim("usual_name", "Dupont")
+                .claim("siret", "21340126800130")
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + Duration.ofDays(1).toMillis()))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+
+    private static String base64Url(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (bytes.length < length) {
+            byte[] padded = new byte[length];
+            System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+            bytes = padded;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,41 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.gouv.dnum.proconnect.web.jwt.JwtHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lecture du kid dans l'en-tête d'un JWT : décodage historique (split, String, ObjectMapper
+ * et arbre JSON à chaque appel) comparé à {@link JwtHeader#parse}. À lire avec {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtHeaderBenchmark {
+
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        token = new JwtFixtures().es256Token();
+    }
+
+    @Benchmark
+    public String legacyKid() throws Exception {
+        String[] jwtParts = token.split("\\.");
+        String headerJson = new String(Base64.getUrlDecoder().decode(jwtParts[0]));
+        ObjectMapper mapper = new ObjectMapper();
+        return mapper.readTree(headerJson).get("kid").asText();
+    }
+
+    @Benchmark
+    public String headerKid() {
+        return JwtHeader.parse(token).kid();
+    }
+}
@@ -0,0 +1,49 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import fr.gouv.dnum.proconnect.web.jwt.JwtAlgorithmEnum;
+import fr.gouv.dnum.proconnect.web.jwt.JwtUtils;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chemin chaud de vérification des JWT ({@link JwtUtils#verifyJwt}) avec un JWKS local.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private JwtFixtures fixtures;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixtures = new JwtFixtures();
+        fixtures.installKeyStore();
+    }
+
+    @Benchmark
+    public Claims verifyEs256() throws Exception {
+        return JwtUtils.verifyJwt(fixtures.es256Token(), JwtAlgorithmEnum.ES256);
+    }
+
+    @Benchmark
+    public Claims verifyRs256() throws Exception {
+        return JwtUtils.verifyJwt(fixtures.rs256Token(), JwtAlgorithmEnum.RS256);
+    }
+
+    @Benchmark
+    public PublicKey publicKeyFromJwksEs256() throws Exception {
+        return JwtUtils.getPublicKeyFromJwks(JwtFixtures.ES256_KID, JwtAlgorithmEnum.ES256);
+    }
+
+    @Benchmark
+    public PublicKey publicKeyFromJwksRs256() throws Exception {
+        return JwtUtils.getPublicKeyFromJwks(JwtFixtures.RS256_KID, JwtAlgorithmEnum.RS256);
+    }
+}
@@ -0,0 +1,201 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import fr.gouv.dnum.proconnect.stub.LoginFlowClient;
+import fr.gouv.dnum.proconnect.stub.StubProConnectProvider;
+import fr.gouv.dnum.proconnect.stub.StubProConnectProvider.Endpoint;
+import fr.gouv.dnum.proconnect.tomcat.ProConnectApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tir de charge de bout en bout : l'application complète contre le fournisseur ProConnect local
+ * ({@link StubProConnectProvider}).
+ * <p>
+ * Chaque utilisateur virtuel enchaîne {@code /proconnect/link}, l'autorisation auprès du
+ * fournisseur, {@code /proconnect/valid_code} et {@code /proconnect/disconnect}. La génération
+ * rapporte le débit de connexions et les percentiles p50/p99/p999 de chaque étape.
+ * <p>
+ * Options ({@code -Djmh.args}) : {@code users=50 logins=5000 warmup=500 latency=0 error-rate=0
+ * rotate-every=0 handshake=session virtual-threads=false}. {@code latency} (ms) et
+ * {@code error-rate} s'appliquent aux endpoints token, userinfo et JWKS ; {@code rotate-every}
+ * (s) renouvelle périodiquement la clé de signature du fournisseur.
+ */
+public final class LoginFlowLoadGenerator {
+
+    private static final String[] STEPS = {"link", "authorize", "valid_code", "disconnect", "parcours"};
+
+    private LoginFlowLoadGenerator() {}
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : String.join(" ", args).trim().split("\\s+")) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length == 2) {
+                options.put(pair[0], pair[1]);
+            }
+        }
+        int users = Integer.parseInt(options.getOrDefault("users", "50"));
+        int logins = Integer.parseInt(options.getOrDefault("logins", "5000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "500"));
+        int latency = Integer.parseInt(options.getOrDefault("latency", "0"));
+        double errorRate = Double.parseDouble(options.getOrDefault("error-rate", "0"));
+        int rotateEvery = Integer.parseInt(options.getOrDefault("rotate-every", "0"));
+        String handshake = options.getOrDefault("handshake", "session");
+        boolean virtualThreads = Boolean.parseBoolean(options.getOrDefault("virtual-threads", "false"));
+        // devtools relancerait main() avec les seuls arguments Spring
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        try (StubProConnectProvider provider = StubProConnectProvider.start(Math.max(users, 1000));
+             ConfigurableApplicationContext context = new SpringApplicationBuilder(ProConnectApplication.class)
+                     .run("--server.port=0",
+                             "--proconnect.oidc.discovery-uri=" + provider.discoveryUri(),
+                             "--proconnect.handshake.mode=" + handshake,
+                             "--proconnect.handshake.cookie-secure=false",
+                             "--spring.threads.virtual.enabled=" + virtualThreads,
+                             "--proconnect.http.pool.max-per-route=" + Math.max(users * 2, 50),
+                             "--proconnect.http.pool.max-total=" + Math.max(users * 2, 100),
+                             "--server.tomcat.threads.max=" + Math.max(users, 200),
+                             "--logging.level.root=WARN");
+             ScheduledExecutorService rotation = Executors.newSingleThreadScheduledExecutor()) {
+            URI application = URI.create("http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port"));
+            HttpClient httpClient = LoginFlowClient.newHttpClient();
+
+            run(httpClient, application, users, warmup);
+
+            for (Endpoint endpoint : List.of(Endpoint.TOKEN, Endpoint.USERINFO, Endpoint.JWKS)) {
+                provider.setLatency(endpoint, Duration.ofMillis(latency));
+                provider.setErrorRate(endpoint, errorRate);
+            }
+            if (rotateEvery > 0) {
+                rotation.scheduleAtFixedRate(provider::rotateKeys, rotateEvery, rotateEvery, TimeUnit.SECONDS);
+            }
+
+            long jwksBefore = provider.requestCount(Endpoint.JWKS);
+            Result result = run(httpClient, application, users, logins);
+            rotation.shutdownNow();
+
+            System.out.printf("%nParcours de connexion : %d utilisateurs, %d connexions, handshake=%s, threads virtuels=%s%n",
+                    users, logins, handshake, virtualThreads);
+            System.out.printf("Fournisseur : latence %d ms, taux d'erreur %.3f, rotation %s%n",
+                    latency, errorRate, rotateEvery > 0 ? "toutes les " + rotateEvery + " s" : "aucune");
+            System.out.printf("%-12s %10s %10s %10s %10s %10s%n", "Étape", "Requêtes", "p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)");
+            for (int step = 0; step < STEPS.length; step++) {
+                long[] samples = result.samples(step);
+                System.out.printf("%-12s %10d %10.2f %10.2f %10.2f %10.2f%n", STEPS[step], samples.length,
+                        percentile(samples, 0.50), percentile(samples, 0.99), percentile(samples, 0.999),
+                        percentile(samples, 1.0));
+            }
+            System.out.printf("Débit : %.1f connexions/s (%d ms), erreurs : %d, téléchargements JWKS : %d%n",
+                    result.succeeded() * 1000.0 / Math.max(result.elapsedMillis(), 1), result.elapsedMillis(),
+                    result.errors(), provider.requestCount(Endpoint.JWKS) - jwksBefore);
+        }
+    }
+
+    private static Result run(HttpClient httpClient, URI application, int users, int logins) throws Exception {
+        AtomicInteger remaining = new AtomicInteger(logins);
+        AtomicInteger errors = new AtomicInteger();
+        List<Future<Samples>> futures = new ArrayList<>(users);
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int user = 0; user < users; user++) {
+                futures.add(executor.submit(() -> {
+                    Samples samples = new Samples();
+                    while (remaining.getAndDecrement() > 0) {
+                        LoginFlowClient browser = new LoginFlowClient(httpClient, application);
+                        try {
+                            long t0 = System.nanoTime();
+                            URI link = browser.link();
+                            long t1 = System.nanoTime();
+                            URI redirect = browser.authorize(link);
+                            long t2 = System.nanoTime();
+                            browser.callback(redirect);
+                            long t3 = System.nanoTime();
+                            browser.disconnect();
+                            long t4 = System.nanoTime();
+                            samples.add(t1 - t0, t2 - t1, t3 - t2, t4 - t3, t4 - t0);
+                        } catch (Exception e) {
+                            if (errors.getAndIncrement() == 0) {
+                                System.err.println("Première erreur : " + e);
+                            }
+                        }
+                    }
+                    return samples;
+                }));
+            }
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Samples merged = new Samples();
+        for (Future<Samples> future : futures) {
+            merged.addAll(future.get());
+        }
+        return new Result(merged, elapsedMillis, errors.get());
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000.0;
+    }
+
+    private record Result(Samples samples, long elapsedMillis, int errors) {
+
+        long succeeded() {
+            return samples.size;
+        }
+
+        long[] samples(int step) {
+            long[] values = Arrays.copyOf(samples.values[step], samples.size);
+            Arrays.sort(values);
+            return values;
+        }
+    }
+
+    /**
+     * Durées (ns) par étape, propres à un utilisateur virtuel puis fusionnées.
+     */
+    private static final class Samples {
+        private final long[][] values = new long[STEPS.length][1024];
+        private int size;
+
+        void add(long... durations) {
+            if (size == values[0].length) {
+                for (int step = 0; step < STEPS.length; step++) {
+                    values[step] = Arrays.copyOf(values[step], size * 2);
+                }
+            }
+            for (int step = 0; step < STEPS.length; step++) {
+                values[step][size] = durations[step];
+            }
+            size++;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) {
+                long[] durations = new long[STEPS.length];
+                for (int step = 0; step < STEPS.length; step++) {
+                    durations[step] = other.values[step][i];
+                }
+                add(durations);
+            }
+        }
+    }
+}
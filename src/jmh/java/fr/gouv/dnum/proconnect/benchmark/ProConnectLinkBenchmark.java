@@ -0,0 +1,50 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import fr.gouv.dnum.proconnect.web.controller.ProConnectController;
+import fr.gouv.dnum.proconnect.web.audit.LoginAuditLogger;
+import fr.gouv.dnum.proconnect.web.handshake.SessionPendingAuthorizationStore;
+import fr.gouv.dnum.proconnect.web.metrics.LoginMetrics;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadata;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import fr.gouv.dnum.proconnect.web.replay.InMemoryReplayCache;
+import fr.gouv.dnum.proconnect.web.resilience.OutboundGuards;
+import fr.gouv.dnum.proconnect.web.token.TokenRefreshService;
+import fr.gouv.dnum.proconnect.web.userinfo.UserInfoCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Génération de l'URL de connexion ({@code /proconnect/link}), session comprise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProConnectLinkBenchmark {
+
+    private ProConnectController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        OidcMetadataProvider oidcMetadataProvider = OidcMetadataProvider.fixed(OidcMetadata.defaults());
+        controller = new ProConnectController(new RestTemplate(), oidcMetadataProvider,
+                new LoginMetrics(new SimpleMeterRegistry()), new LoginAuditLogger(128, new SimpleMeterRegistry()),
+                new SessionPendingAuthorizationStore(), UserInfoCache.disabled(),
+                new TokenRefreshService(new RestTemplate(), oidcMetadataProvider, new SimpleMeterRegistry(), Duration.ofSeconds(30)),
+                new InMemoryReplayCache(Duration.ofMinutes(10), 10, 1000, Clock.systemUTC(), new SimpleMeterRegistry()),
+                OutboundGuards.defaults(new SimpleMeterRegistry()));
+    }
+
+    @Benchmark
+    public String getProConnectLink() {
+        return controller.getProConnectLink(new MockHttpServletRequest());
+    }
+}
@@ -0,0 +1,191 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import fr.gouv.dnum.proconnect.web.response.BodyResponse;
+import fr.gouv.dnum.proconnect.web.session.ProConnectPrincipal;
+import fr.gouv.dnum.proconnect.web.token.TokenSet;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mesure des octets occupés par une session connectée, avant et après {@link ProConnectPrincipal}.
+ * <p>
+ * Les attributs de session sont ceux écrits par le callback, avec des claims et des jetons de taille
+ * réaliste (ID token RS256, jetons opaques). Trois mesures par variante :
+ * <ul>
+ *     <li>sérialisation d'une session seule, comme lors de sa réplication ;</li>
+ *     <li>sérialisation de {@code sessions} sessions dans un même flux (persistance de toutes les sessions) ;</li>
+ *     <li>tas occupé par session, avec des instances distinctes par session comme sur un nœud répliqué.</li>
+ * </ul>
+ * Options ({@code -Djmh.args}) : {@code sessions=20000}.
+ */
+public final class SessionFootprint {
+
+    private SessionFootprint() {}
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : String.join(" ", args).trim().split("\\s+")) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length == 2) {
+                options.put(pair[0], pair[1]);
+            }
+        }
+        int sessions = Integer.parseInt(options.getOrDefault("sessions", "20000"));
+
+        Instant now = Instant.now();
+        Claims idTokenClaims = Jwts.claims()
+                .subject("f1d7c8a4e6b2493f8a1c0e5d7b9f2a3c4d5e6f708192a3b4c5d6e7f8091a2b3c")
+                .expiration(Date.from(now.plusSeconds(60)))
+                .build();
+        // claims userinfo tels que retournés par JwtUtils.verifyJwt puis copiés par le callback
+        Map<String, Object> userInfo = new HashMap<>(Jwts.claims()
+                .add("sub", idTokenClaims.getSubject())
+                .add("email", "jean.dupont@interieur.gouv.fr")
+                .add("given_name", "Jean")
+                .add("usual_name", "Dupont")
+                .add("siret", "11000201100044")
+                .add("uid", "2da4c4a5-69f5-4cb6-a1ab-b29a9cd2b4a0")
+                .add("idp_id", "71144ab3-ee1a-4401-b7b3-79b44f7daeeb")
+                .add("phone_number", "0123456789")
+                .add("aud", "6925fb8143c76eded44d32b40c0cb1006065f7f003de52712b78985704f39950")
+                .add("iss", "https://fca.integ01.dev-agentconnect.fr/api/v2")
+                .add("iat", now.getEpochSecond())
+                .add("exp", now.plusSeconds(60).getEpochSecond())
+                .build());
+
+        BodyResponse tokens = new BodyResponse();
+        tokens.setAccessToken(opaqueToken());
+        tokens.setRefreshToken(opaqueToken());
+        tokens.setIdToken(idToken(idTokenClaims, now));
+        tokens.setTokenType("Bearer");
+        tokens.setExpiresIn(60L);
+        TokenSet tokenSet = TokenSet.from(tokens, now, null);
+        ProConnectPrincipal principal = ProConnectPrincipal.from(idTokenClaims, userInfo);
+
+        Map<String, Map<String, Object>> variants = new LinkedHashMap<>();
+        variants.put("avant : Map userinfo + jetons", session(userInfo, tokenSet));
+        variants.put("principal + jetons (opt-in)", session(principal, tokenSet));
+        variants.put("principal seul (défaut)", session(principal, null));
+
+        System.out.printf("%n%d sessions, ID token de %d caractères%n", sessions, tokens.getIdToken().length());
+        System.out.printf("%-32s %16s %20s %16s%n", "Session", "Sérialisée (o)", "Flux partagé (o/s.)", "Tas (o/s.)");
+        for (Map.Entry<String, Map<String, Object>> variant : variants.entrySet()) {
+            byte[] single = serialize(List.of(variant.getValue()));
+            long shared = serialize(replicas(single, Math.min(sessions, 1000))).length / Math.min(sessions, 1000);
+            System.out.printf("%-32s %16d %20d %16d%n", variant.getKey(), single.length, shared, heapPerSession(single, sessions));
+        }
+    }
+
+    /**
+     * Attributs de la session après le callback.
+     */
+    private static Map<String, Object> session(Object userInfo, TokenSet tokens) {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        if (tokens != null) {
+            attributes.put("proConnectTokens", tokens);
+            attributes.put("proConnectAccessToken", tokens.accessToken());
+            attributes.put("proConnectIdToken", tokens.idToken());
+        }
+        attributes.put("proConnectUserInfo", userInfo);
+        return attributes;
+    }
+
+    private static long heapPerSession(byte[] single, int sessions) throws Exception {
+        long before = usedHeap();
+        List<Map<String, Object>> retained = replicas(single, sessions);
+        long after = usedHeap();
+        if (retained.size() != sessions) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / sessions;
+    }
+
+    /**
+     * Sessions désérialisées une à une : aucune instance partagée entre deux sessions.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> replicas(byte[] single, int count) throws Exception {
+        List<Map<String, Object>> replicas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(single))) {
+                int size = in.readInt();
+                Map<String, Object> attributes = new ConcurrentHashMap<>();
+                for (int a = 0; a < size; a++) {
+                    attributes.put((String) in.readObject(), in.readObject());
+                }
+                replicas.add(attributes);
+            }
+        }
+        return replicas;
+    }
+
+    /**
+     * Écrire les attributs comme le fait Tomcat : nombre d'attributs puis paires nom / valeur.
+     */
+    private static byte[] serialize(List<Map<String, Object>> sessions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for (Map<String, Object> attributes : sessions) {
+                out.writeInt(attributes.size());
+                for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                    out.writeObject(attribute.getKey());
+                    out.writeObject(attribute.getValue());
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String idToken(Claims claims, Instant now) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        return Jwts.builder()
+                .header().keyId("pc-rs256").and()
+                .issuer("https://fca.integ01.dev-agentconnect.fr/api/v2")
+                .subject(claims.getSubject())
+                .audience().add("6925fb8143c76eded44d32b40c0cb1006065f7f003de52712b78985704f39950").and()
+                .issuedAt(Date.from(now))
+                .expiration(claims.getExpiration())
+                .claim("nonce", 123456789L)
+                .claim("acr", "eidas1")
+                .claim("amr", List.of("pwd"))
+                .claim("auth_time", now.getEpochSecond())
+                .claim("idp_id", "71144ab3-ee1a-4401-b7b3-79b44f7daeeb")
+                .signWith(keyPair.getPrivate(), Jwts.SIG.RS256)
+                .compact();
+    }
+
+    private static String opaqueToken() {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+    }
+}
@@ -0,0 +1,120 @@
+package fr.gouv.dnum.proconnect.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import fr.gouv.dnum.proconnect.web.http.HttpClientConfig;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulation de charge du callback {@code /proconnect/valid_code} avec latence injectée côté IdP.
+ * <p>
+ * Chaque callback simulé enchaîne deux appels bloquants (token puis userinfo) via le client HTTP
+ * partagé de l'application, vers un IdP local qui répond après {@code latency} ms. Les callbacks
+ * sont exécutés soit sur un pool de threads plateforme de la taille du pool Tomcat, soit sur des
+ * threads virtuels, et la simulation rapporte le nombre de callbacks simultanés atteint.
+ * <p>
+ * Options ({@code -Djmh.args}) : {@code callbacks=2000 latency=200 platform-threads=200}.
+ */
+public final class VirtualThreadLoadSimulation {
+
+    private VirtualThreadLoadSimulation() {}
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : String.join(" ", args).trim().split("\\s+")) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length == 2) {
+                options.put(pair[0], pair[1]);
+            }
+        }
+        int callbacks = Integer.parseInt(options.getOrDefault("callbacks", "2000"));
+        int latency = Integer.parseInt(options.getOrDefault("latency", "200"));
+        int platformThreads = Integer.parseInt(options.getOrDefault("platform-threads", "200"));
+
+        HttpServer idp = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 8192);
+        idp.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        idp.createContext("/", exchange -> {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        idp.start();
+        String base = "http://127.0.0.1:" + idp.getAddress().getPort();
+
+        // client HTTP de l'application, dimensionné pour ne pas être le facteur limitant
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(HttpClientConfig.class)
+                .web(WebApplicationType.NONE)
+                .run("--proconnect.http.pool.max-per-route=" + callbacks,
+                        "--proconnect.http.pool.max-total=" + callbacks,
+                        "--proconnect.http.read-timeout=60s",
+                        "--proconnect.http.pool-acquire-timeout=60s")) {
+            RestTemplate restTemplate = context.getBean(RestTemplate.class);
+
+            System.out.printf("%nIdP local : latence %d ms, %d callbacks (2 appels chacun)%n", latency, callbacks);
+            System.out.printf("%-28s %12s %12s %14s %8s%n", "Mode", "Simultanés", "Durée (ms)", "Callbacks/s", "Erreurs");
+
+            try (ExecutorService platform = Executors.newFixedThreadPool(platformThreads)) {
+                run("threads plateforme (" + platformThreads + ")", platform, restTemplate, base, callbacks);
+            }
+            try (ExecutorService virtual = Executors.newVirtualThreadPerTaskExecutor()) {
+                run("threads virtuels", virtual, restTemplate, base, callbacks);
+            }
+        } finally {
+            idp.stop(0);
+        }
+    }
+
+    private static void run(String mode, ExecutorService executor, RestTemplate restTemplate,
+                            String base, int callbacks) throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        URI token = URI.create(base + "/api/v2/token");
+        URI userinfo = URI.create(base + "/api/v2/userinfo");
+
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>(callbacks);
+        for (int i = 0; i < callbacks; i++) {
+            futures.add(executor.submit(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    restTemplate.postForObject(token, null, String.class);
+                    restTemplate.getForObject(userinfo, String.class);
+                } catch (Exception e) {
+                    if (errors.getAndIncrement() == 0) {
+                        System.err.println("Première erreur : " + e);
+                    }
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%-28s %12d %12d %14.1f %8d%n", mode, maxInFlight.get(), elapsedMs,
+                callbacks * 1000.0 / Math.max(elapsedMs, 1), errors.get());
+    }
+}
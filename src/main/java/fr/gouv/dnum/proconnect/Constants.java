@@ -18,6 +18,7 @@ public class Constants {
         public static final String TOKEN_ENDPOINT = ENVIRONMENT + "/api/v2/token";
         public static final String DISCONNECT_ENDPOINT = ENVIRONMENT + "/api/v2/session/end";
         public static final String JWKS_ENDPOINT = ENVIRONMENT + "/api/v2/jwks";
+        public static final String DISCOVERY_ENDPOINT = ENVIRONMENT + "/api/v2/.well-known/openid-configuration";
 
         public static final String CLIENT_ID = "to define";
         public static final String CLIENT_SECRET = "to define";
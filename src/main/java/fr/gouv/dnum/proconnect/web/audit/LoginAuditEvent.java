@@ -0,0 +1,54 @@
+package fr.gouv.dnum.proconnect.web.audit;
+
+import fr.gouv.dnum.proconnect.web.metrics.LoginMetrics;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Événement d'audit émis une fois par tentative de connexion ProConnect.
+ * <p>
+ * Les jetons ne sont jamais conservés en clair : seule une empreinte SHA-256 tronquée est
+ * journalisée, ce qui permet de corréler deux événements sans exposer le jeton.
+ */
+public record LoginAuditEvent(Instant timestamp,
+                              String outcome,
+                              String reason,
+                              String subject,
+                              String email,
+                              String siret,
+                              String issuer,
+                              long durationMillis,
+                              String accessTokenFingerprint,
+                              String idTokenFingerprint) {
+
+    public static LoginAuditEvent success(String subject, String email, String siret, String issuer,
+                                          long durationMillis, String accessToken, String idToken) {
+        return new LoginAuditEvent(Instant.now(), "success", null, subject, email, siret, issuer,
+                durationMillis, fingerprint(accessToken), fingerprint(idToken));
+    }
+
+    public static LoginAuditEvent failure(LoginMetrics.Rejection reason, String issuer, long durationMillis) {
+        return new LoginAuditEvent(Instant.now(), "failure", reason.name().toLowerCase(Locale.ROOT), null, null, null, issuer,
+                durationMillis, null, null);
+    }
+
+    /**
+     * Empreinte non réversible d'un jeton : {@code sha256:} suivi des 12 premiers caractères hexadécimaux.
+     */
+    static String fingerprint(String token) {
+        if (token == null) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return "sha256:" + HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
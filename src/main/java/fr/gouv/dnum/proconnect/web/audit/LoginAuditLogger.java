@@ -0,0 +1,107 @@
+package fr.gouv.dnum.proconnect.web.audit;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Journal d'audit des connexions.
+ * <p>
+ * Le thread de requête ne fait que déposer l'événement dans une file bornée, sans jamais
+ * bloquer : si la file est pleine, l'événement est abandonné et comptabilisé
+ * ({@code proconnect.audit.events{result=dropped}}). Un thread dédié sérialise les événements
+ * en JSON (une ligne par connexion) vers le logger {@code proconnect.audit}, redirigé dans
+ * logback vers un fichier à rotation.
+ */
+@Slf4j
+@Component
+public class LoginAuditLogger implements AutoCloseable {
+
+    private static final Logger AUDIT = LoggerFactory.getLogger("proconnect.audit");
+
+    private static final ObjectWriter WRITER = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build()
+            .writerFor(LoginAuditEvent.class);
+
+    private final BlockingQueue<LoginAuditEvent> queue;
+    private final Consumer<String> sink;
+    private final Counter published;
+    private final Counter dropped;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    @Autowired
+    public LoginAuditLogger(@Value("${proconnect.audit.queue-size:8192}") int capacity, MeterRegistry registry) {
+        this(capacity, registry, AUDIT::info);
+    }
+
+    LoginAuditLogger(int capacity, MeterRegistry registry, Consumer<String> sink) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.sink = sink;
+        this.published = Counter.builder("proconnect.audit.events").tag("result", "published").register(registry);
+        this.dropped = Counter.builder("proconnect.audit.events").tag("result", "dropped").register(registry);
+        Gauge.builder("proconnect.audit.queue.size", queue, BlockingQueue::size).register(registry);
+
+        this.writer = new Thread(this::drain, "login-audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Publier un événement sans bloquer l'appelant.
+     *
+     * @return {@code false} si l'événement a été abandonné faute de place
+     */
+    public boolean publish(LoginAuditEvent event) {
+        if (queue.offer(event)) {
+            published.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                LoginAuditEvent event = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    sink.accept(WRITER.writeValueAsString(event));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("Écriture d'un événement d'audit impossible : {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Arrêter le thread d'écriture après avoir vidé la file.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,36 @@
+package fr.gouv.dnum.proconnect.web.bearer;
+
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Validation des jetons Bearer sur les chemins d'API ({@code proconnect.bearer.url-patterns}).
+ */
+@Configuration
+public class BearerTokenConfig {
+
+    @Bean
+    public VerifiedTokenCache verifiedTokenCache(@Value("${proconnect.bearer.cache.max-size:10000}") int maxSize,
+                                                 @Value("${proconnect.bearer.cache.max-ttl:5m}") Duration maxTtl,
+                                                 MeterRegistry meterRegistry) {
+        return new VerifiedTokenCache(maxSize, maxTtl, Clock.systemUTC(), meterRegistry);
+    }
+
+    @Bean
+    public FilterRegistrationBean<BearerTokenFilter> bearerTokenFilter(VerifiedTokenCache verifiedTokenCache,
+                                                                       OidcMetadataProvider oidcMetadataProvider,
+                                                                       @Value("${proconnect.bearer.url-patterns:/api/*}") String[] urlPatterns) {
+        FilterRegistrationBean<BearerTokenFilter> registration =
+                new FilterRegistrationBean<>(new BearerTokenFilter(verifiedTokenCache, oidcMetadataProvider));
+        registration.addUrlPatterns(urlPatterns);
+        registration.setEnabled(urlPatterns.length > 0);
+        return registration;
+    }
+}
@@ -0,0 +1,85 @@
+package fr.gouv.dnum.proconnect.web.bearer;
+
+import fr.gouv.dnum.proconnect.web.jwt.IdTokenValidator;
+import fr.gouv.dnum.proconnect.web.jwt.JwtUtils;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadata;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Filtre des appels d'API authentifiés par un JWT ProConnect ({@code Authorization: Bearer}).
+ * <p>
+ * Le jeton est vérifié comme l'id_token du callback : signature via le JWKS, avec un des algorithmes
+ * annoncés par la découverte OIDC, puis iss, aud et exp ; ses claims sont ensuite disponibles dans l'attribut de requête
+ * {@link #CLAIMS_ATTRIBUTE}. Un jeton déjà vérifié est servi par {@link VerifiedTokenCache}
+ * jusqu'à son expiration, sans nouvelle vérification de signature. Un jeton absent ou refusé
+ * reçoit une réponse 401 avec l'en-tête {@code WWW-Authenticate} (RFC 6750).
+ */
+@Slf4j
+public class BearerTokenFilter extends OncePerRequestFilter {
+
+    public static final String CLAIMS_ATTRIBUTE = "proConnectClaims";
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final VerifiedTokenCache cache;
+    private final OidcMetadataProvider oidcMetadataProvider;
+
+    public BearerTokenFilter(VerifiedTokenCache cache, OidcMetadataProvider oidcMetadataProvider) {
+        this.cache = cache;
+        this.oidcMetadataProvider = oidcMetadataProvider;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            unauthorized(response, "Bearer");
+            return;
+        }
+
+        Claims claims;
+        try {
+            claims = verify(authorization.substring(BEARER_PREFIX.length()).trim());
+        } catch (Exception e) {
+            log.debug("Jeton Bearer refusé sur {} : {}", request.getRequestURI(), e.getMessage());
+            unauthorized(response, "Bearer error=\"invalid_token\"");
+            return;
+        }
+
+        request.setAttribute(CLAIMS_ATTRIBUTE, claims);
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * Vérifier un jeton Bearer, ou retourner les claims mémorisés s'il a déjà été vérifié.
+     *
+     * @throws SecurityException si iss, aud ou exp sont invalides
+     */
+    public Claims verify(String token) throws Exception {
+        Claims claims = cache.get(token);
+        if (claims != null) {
+            return claims;
+        }
+        OidcMetadata metadata = oidcMetadataProvider.current();
+        claims = JwtUtils.verifyJwt(token, metadata.idTokenAlgorithms());
+        IdTokenValidator.validate(claims, metadata.issuer());
+        cache.put(token, claims);
+        return claims;
+    }
+
+    private static void unauthorized(HttpServletResponse response, String challenge) {
+        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        response.setHeader(HttpHeaders.WWW_AUTHENTICATE, challenge);
+    }
+}
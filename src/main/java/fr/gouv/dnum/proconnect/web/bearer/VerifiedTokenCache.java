@@ -0,0 +1,92 @@
+package fr.gouv.dnum.proconnect.web.bearer;
+
+import fr.gouv.dnum.proconnect.web.cache.BoundedTtlCache;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Cache des claims de jetons Bearer déjà vérifiés (signature, iss, aud, exp), indexé par
+ * l'empreinte SHA-256 du jeton : le jeton lui-même n'est pas conservé.
+ * <p>
+ * Une entrée vit jusqu'au {@code exp} du jeton, sans dépasser {@code maxTtl} afin qu'une clé
+ * retirée du JWKS cesse d'être acceptée. Au-delà de {@code maxSize} entrées, les plus anciennes
+ * sont évincées. Une taille maximale de 0 désactive le cache.
+ * <ul>
+ *     <li>{@code proconnect.bearer.cache{result}} : succès / échecs ({@code hit}, {@code miss})</li>
+ *     <li>{@code proconnect.bearer.cache.size} : entrées en cache</li>
+ * </ul>
+ */
+public class VerifiedTokenCache {
+
+    private final BoundedTtlCache<String, Claims> entries;
+    private final int maxSize;
+    private final long maxTtlMillis;
+    private final Clock clock;
+    private final Counter hits;
+    private final Counter misses;
+
+    public VerifiedTokenCache(int maxSize, Duration maxTtl, Clock clock, MeterRegistry registry) {
+        this.maxSize = maxSize;
+        this.maxTtlMillis = maxTtl.toMillis();
+        this.clock = clock;
+        this.entries = new BoundedTtlCache<>(maxSize, clock);
+        this.hits = Counter.builder("proconnect.bearer.cache").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("proconnect.bearer.cache").tag("result", "miss").register(registry);
+        Gauge.builder("proconnect.bearer.cache.size", entries, BoundedTtlCache::size).register(registry);
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Retourner les claims d'un jeton déjà vérifié, ou {@code null} s'il est absent ou expiré.
+     */
+    public Claims get(String token) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Claims claims = entries.get(key(token));
+        (claims != null ? hits : misses).increment();
+        return claims;
+    }
+
+    /**
+     * Mémoriser un jeton dont la signature et les claims viennent d'être vérifiés.
+     */
+    public void put(String token, Claims claims) {
+        Date exp = claims.getExpiration();
+        if (!isEnabled() || exp == null) {
+            return;
+        }
+        long now = clock.millis();
+        long expiresAt = Math.min(exp.getTime(), now + maxTtlMillis);
+        if (expiresAt <= now) {
+            return;
+        }
+        entries.put(key(token), claims, expiresAt);
+    }
+
+    private static String key(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
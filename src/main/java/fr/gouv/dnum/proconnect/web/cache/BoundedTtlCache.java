@@ -0,0 +1,143 @@
+package fr.gouv.dnum.proconnect.web.cache;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Table en mémoire, sans verrou, dont les entrées expirent et dont la taille est plafonnée à
+ * {@code maxSize}.
+ * <p>
+ * Les entrées sont aussi rangées dans une file par ordre d'insertion : à chaque écriture, les
+ * entrées expirées en tête de file sont retirées, puis les plus anciennes au-delà de la capacité.
+ * La file peut contenir des entrées déjà remplacées ou retirées, simplement ignorées. Lorsque la
+ * durée de vie est la même pour toutes les entrées, l'ordre d'insertion est aussi l'ordre
+ * d'expiration ; sinon, une entrée expirée derrière une entrée plus durable attend son éviction par
+ * capacité, sans jamais être retournée par {@link #get}.
+ *
+ * @param <K> clé
+ * @param <V> valeur
+ */
+public final class BoundedTtlCache<K, V> {
+
+    /**
+     * Cause d'une éviction, transmise à l'écouteur fourni à la construction.
+     */
+    public enum Eviction {
+        EXPIRED, CAPACITY
+    }
+
+    // identité propre : une entrée remplacée par une valeur égale n'est pas retirée à sa place
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long expiresAt;
+
+        Node(K key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<K, Node<K, V>> entries = new ConcurrentHashMap<>();
+    // ordre d'insertion, pour l'éviction des plus anciennes entrées
+    private final Queue<Node<K, V>> insertionQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final int maxSize;
+    private final Clock clock;
+    private final Consumer<Eviction> evictionListener;
+
+    public BoundedTtlCache(int maxSize, Clock clock) {
+        this(maxSize, clock, eviction -> {
+        });
+    }
+
+    /**
+     * @param evictionListener appelé pour chaque entrée retirée parce qu'expirée ou au-delà de la capacité
+     */
+    public BoundedTtlCache(int maxSize, Clock clock, Consumer<Eviction> evictionListener) {
+        this.maxSize = maxSize;
+        this.clock = clock;
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Retourner la valeur associée à {@code key}, ou {@code null} si elle est absente ou expirée.
+     */
+    public V get(K key) {
+        Node<K, V> node = entries.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (clock.millis() >= node.expiresAt) {
+            if (entries.remove(key, node)) {
+                evictionListener.accept(Eviction.EXPIRED);
+            }
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * Retourner la valeur associée à {@code key}, même expirée, ou {@code null} si elle est absente.
+     * L'expiration est alors à contrôler par l'appelant.
+     */
+    public V peek(K key) {
+        Node<K, V> node = entries.get(key);
+        return node != null ? node.value : null;
+    }
+
+    /**
+     * Associer {@code value} à {@code key} jusqu'à {@code expiresAt} (millisecondes depuis l'epoch),
+     * puis évincer les entrées expirées ou au-delà de la capacité.
+     */
+    public void put(K key, V value, long expiresAt) {
+        Node<K, V> node = new Node<>(key, value, expiresAt);
+        entries.put(key, node);
+        insertionQueue.add(node);
+        queued.incrementAndGet();
+        evict(clock.millis());
+    }
+
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Retirer {@code key} seulement s'il est encore associé à cette instance de {@code value}.
+     *
+     * @return {@code false} si l'entrée a déjà été retirée ou remplacée
+     */
+    public boolean remove(K key, V value) {
+        Node<K, V> node = entries.get(key);
+        return node != null && node.value == value && entries.remove(key, node);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Retirer les entrées expirées en tête de file, puis les plus anciennes au-delà de la capacité.
+     */
+    private void evict(long now) {
+        Node<K, V> head;
+        while ((head = insertionQueue.peek()) != null && (head.expiresAt <= now || queued.get() > maxSize)) {
+            // sous concurrence, l'entrée dépilée peut être plus récente que celle examinée
+            Node<K, V> polled = insertionQueue.poll();
+            if (polled == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            if (entries.remove(polled.key, polled)) {
+                evictionListener.accept(polled.expiresAt <= now ? Eviction.EXPIRED : Eviction.CAPACITY);
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package fr.gouv.dnum.proconnect.web.controller;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.gouv.dnum.proconnect.Constants;
+import fr.gouv.dnum.proconnect.web.audit.LoginAuditEvent;
+import fr.gouv.dnum.proconnect.web.audit.LoginAuditLogger;
+import fr.gouv.dnum.proconnect.web.handshake.PendingAuthorization;
+import fr.gouv.dnum.proconnect.web.handshake.PendingAuthorizationStore;
+import fr.gouv.dnum.proconnect.web.jwt.IdTokenValidator;
+import fr.gouv.dnum.proconnect.web.jwt.JwtUtils;
+import fr.gouv.dnum.proconnect.web.metrics.LoginMetrics;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadata;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import fr.gouv.dnum.proconnect.web.replay.ReplayCache;
+import fr.gouv.dnum.proconnect.web.resilience.EndpointGuard;
+import fr.gouv.dnum.proconnect.web.resilience.OutboundGuards;
+import fr.gouv.dnum.proconnect.web.resilience.ProConnectEndpoint;
+import fr.gouv.dnum.proconnect.web.response.BodyResponse;
+import fr.gouv.dnum.proconnect.web.session.ProConnectPrincipal;
+import fr.gouv.dnum.proconnect.web.token.TokenRefreshService;
+import fr.gouv.dnum.proconnect.web.userinfo.UserInfoCache;
+import io.micrometer.core.instrument.Timer;
+import io.swagger.v3.oas.annotations.Hidden;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static fr.gouv.dnum.proconnect.web.controller.ProConnectController.*;
+
+/**
+ * Variante asynchrone du callback ProConnect.
+ * <p>
+ * Les appels token et userinfo sont effectués avec un client HTTP non bloquant : le thread
+ * servlet est libéré pendant l'attente de ProConnect. Les contrôles (state, iss, aud, exp, nonce)
+ * sont identiques à ceux de {@link ProConnectController#getProConnectToken}.
+ * Les vérifications et l'écriture de la session s'exécutent sur quelques threads dédiés, jamais sur
+ * les threads du client HTTP ; un JWKS à télécharger est attendu sans bloquer ces threads.
+ * Pour l'utiliser, déclarer {@code /proconnect/valid_code_async} comme URL de redirection dans
+ * le back-office ProConnect et dans {@link Constants.MyApplication#REDIRECT_URI}.
+ */
+@Slf4j
+@RestController
+public class ProConnectAsyncController {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    // Suite du callback (vérification des jetons, session), un thread par cœur : aucune tâche n'y bloque
+    private final ExecutorService callbackExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            Thread.ofPlatform().name("proconnect-callback-", 0).daemon(true).factory());
+
+    private final HttpClient httpClient;
+    private final OidcMetadataProvider oidcMetadataProvider;
+    private final LoginMetrics loginMetrics;
+    private final LoginAuditLogger loginAuditLogger;
+    private final PendingAuthorizationStore pendingAuthorizations;
+    private final UserInfoCache userInfoCache;
+    private final TokenRefreshService tokenRefreshService;
+    private final ReplayCache replayCache;
+    private final OutboundGuards outboundGuards;
+
+    public ProConnectAsyncController(HttpClient proConnectAsyncHttpClient,
+                                     OidcMetadataProvider oidcMetadataProvider,
+                                     LoginMetrics loginMetrics,
+                                     LoginAuditLogger loginAuditLogger,
+                                     PendingAuthorizationStore pendingAuthorizations,
+                                     UserInfoCache userInfoCache,
+                                     TokenRefreshService tokenRefreshService,
+                                     ReplayCache replayCache,
+                                     OutboundGuards outboundGuards) {
+        this.httpClient = proConnectAsyncHttpClient;
+        this.oidcMetadataProvider = oidcMetadataProvider;
+        this.loginMetrics = loginMetrics;
+        this.loginAuditLogger = loginAuditLogger;
+        this.pendingAuthorizations = pendingAuthorizations;
+        this.userInfoCache = userInfoCache;
+        this.tokenRefreshService = tokenRefreshService;
+        this.replayCache = replayCache;
+        this.outboundGuards = outboundGuards;
+    }
+
+    @Hidden
+    @GetMapping("/proconnect/valid_code_async")
+    public CompletableFuture<String> getProConnectTokenAsync(HttpServletRequest request,
+                                                             HttpServletResponse response,
+                                                             @RequestParam("code") String code,
+                                                             @RequestParam("state") String state,
+                                                             @RequestParam("iss") String iss) {
+
+        Timer.Sample loginSample = loginMetrics.startLogin();
+        long start = System.nanoTime();
+
+        PendingAuthorization pending;
+        try {
+            pending = pendingAuthorizations.consume(state, request, response);
+        } catch (SecurityException e) {
+            log.warn("Callback ProConnect refusé ({}), state reçu : {}", e.getMessage(), state);
+            LoginMetrics.Rejection rejection = loginMetrics.reject(e);
+            loginMetrics.stopLogin(loginSample, "failure");
+            loginAuditLogger.publish(LoginAuditEvent.failure(rejection, iss, elapsedMillis(start)));
+            return CompletableFuture.completedFuture("Erreur");
+        }
+
+        OidcMetadata metadata = oidcMetadataProvider.current();
+
+        Map<String, String> form = new HashMap<>();
+        form.put("code", code);
+        form.put("grant_type", "authorization_code");
+        form.put("client_id", Constants.ProConnect.CLIENT_ID);
+        form.put("client_secret", Constants.ProConnect.CLIENT_SECRET);
+        form.put("redirect_uri", Constants.MyApplication.REDIRECT_URI);
+
+        EndpointGuard tokenGuard = outboundGuards.get(ProConnectEndpoint.TOKEN);
+        HttpRequest tokenRequest = HttpRequest.newBuilder(URI.create(metadata.tokenEndpoint()))
+                .timeout(tokenGuard.timeout())
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(encodeForm(form)))
+                .build();
+
+        return tokenGuard.callAsync(() -> httpClient.sendAsync(tokenRequest, HttpResponse.BodyHandlers.ofString()),
+                        ProConnectAsyncController::isServerError)
+                .thenApplyAsync(tokenResponse -> parseTokenResponse(body(tokenResponse)), callbackExecutor)
+                .thenCompose(bodyResponse -> {
+                    // La requête userinfo part avant la vérification de l'ID token, qui s'exécute
+                    // pendant l'attente réseau ; une vérification en échec annule la requête.
+                    // Avec le cache, indexé par le sub vérifié, les deux étapes restent séquentielles.
+                    CompletableFuture<HttpResponse<String>> userInfoResponse = userInfoCache.isEnabled() ? null
+                            : sendUserInfoRequest(metadata, bodyResponse.getAccessToken());
+                    return JwtUtils.verifyJwtAsync(bodyResponse.getIdToken(), metadata.idTokenAlgorithms(), callbackExecutor)
+                            .thenApply(claims -> {
+                                IdTokenValidator.validate(claims, pending.nonce(), metadata.issuer());
+                                IdTokenValidator.checkReplay(claims, replayCache);
+                                pendingAuthorizations.complete(pending);
+                                log.debug("JWT vérifié : sub={}", claims.getSubject());
+                                return claims;
+                            })
+                            .whenComplete((claims, e) -> {
+                                if (e != null && userInfoResponse != null) {
+                                    userInfoResponse.cancel(true);
+                                }
+                            })
+                            .thenCompose(claims -> (userInfoResponse != null
+                                    ? toUserInfo(metadata, userInfoResponse)
+                                    : resolveUserInfo(metadata, claims.getSubject(), bodyResponse))
+                                    .thenApplyAsync(userInfo -> {
+                                        ProConnectPrincipal principal = ProConnectPrincipal.from(claims, userInfo);
+                                        HttpSession session = request.getSession(true);
+                                        tokenRefreshService.store(session, bodyResponse);
+                                        session.setAttribute(SESSION_USER_INFO, principal);
+                                        loginMetrics.stopLogin(loginSample, "success");
+                                        loginAuditLogger.publish(LoginAuditEvent.success(claims.getSubject(),
+                                                principal.email(), principal.siret(),
+                                                iss, elapsedMillis(start), bodyResponse.getAccessToken(), bodyResponse.getIdToken()));
+                                        return "[Connecté : " + principal.email() + "]";
+                                    }, callbackExecutor));
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    LoginMetrics.Rejection rejection = loginMetrics.reject(cause);
+                    loginMetrics.stopLogin(loginSample, "failure");
+                    loginAuditLogger.publish(LoginAuditEvent.failure(rejection, iss, elapsedMillis(start)));
+                    if (isUnavailable(cause)) {
+                        log.warn("Callback ProConnect interrompu : {}", cause.getMessage());
+                        return unavailable(response);
+                    }
+                    log.error(cause.getMessage(), cause);
+                    return "Erreur";
+                });
+    }
+
+    /**
+     * Variante sans réponse HTTP, utilisable uniquement avec le stockage en session.
+     */
+    public CompletableFuture<String> getProConnectTokenAsync(HttpServletRequest request, String code, String state, String iss) {
+        return getProConnectTokenAsync(request, null, code, state, iss);
+    }
+
+    /**
+     * Informations utilisateur depuis le cache si possible, sinon depuis ProConnect.
+     */
+    private CompletableFuture<Map<String, Object>> resolveUserInfo(OidcMetadata metadata, String sub, BodyResponse bodyResponse) {
+        Map<String, Object> cached = userInfoCache.get(sub);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return getUserInfo(metadata, bodyResponse.getAccessToken())
+                .thenApply(userInfo -> {
+                    if (sub != null && sub.equals(userInfo.get("sub"))) {
+                        userInfoCache.put(sub, userInfo, bodyResponse.getExpiresIn() != null
+                                ? Duration.ofSeconds(bodyResponse.getExpiresIn()) : null);
+                    }
+                    return userInfo;
+                });
+    }
+
+    private CompletableFuture<Map<String, Object>> getUserInfo(OidcMetadata metadata, String accessToken) {
+        return toUserInfo(metadata, sendUserInfoRequest(metadata, accessToken));
+    }
+
+    /**
+     * Envoyer la requête userinfo ; annuler le future retourné interrompt l'échange HTTP.
+     */
+    private CompletableFuture<HttpResponse<String>> sendUserInfoRequest(OidcMetadata metadata, String accessToken) {
+        EndpointGuard userInfoGuard = outboundGuards.get(ProConnectEndpoint.USERINFO);
+        HttpRequest userInfoRequest = HttpRequest.newBuilder(URI.create(metadata.userinfoEndpoint()))
+                .timeout(userInfoGuard.timeout())
+                .header("Authorization", "Bearer " + accessToken)
+                .GET()
+                .build();
+        return userInfoGuard.callAsync(() -> httpClient.sendAsync(userInfoRequest, HttpResponse.BodyHandlers.ofString()),
+                ProConnectAsyncController::isServerError);
+    }
+
+    /**
+     * Une réponse 5xx compte comme un échec pour le disjoncteur ; une 4xx est une réponse de ProConnect.
+     */
+    private static boolean isServerError(HttpResponse<String> response) {
+        return response.statusCode() >= 500;
+    }
+
+    /**
+     * Vérifier la réponse userinfo (JWT signé) sur les threads du callback.
+     */
+    private CompletableFuture<Map<String, Object>> toUserInfo(OidcMetadata metadata,
+                                                              CompletableFuture<HttpResponse<String>> response) {
+        return response
+                .thenComposeAsync(userInfoResponse -> JwtUtils.verifyJwtAsync(body(userInfoResponse),
+                        metadata.userinfoAlgorithms(), callbackExecutor), callbackExecutor)
+                .thenApply(HashMap::new);
+    }
+
+    private BodyResponse parseTokenResponse(String responseBody) {
+        try {
+            return objectMapper.readValue(responseBody, BodyResponse.class);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static String body(HttpResponse<String> response) {
+        if (response.statusCode() / 100 != 2) {
+            throw new CompletionException(new IllegalStateException(
+                    "Réponse HTTP " + response.statusCode() + " de " + response.uri()));
+        }
+        return response.body();
+    }
+
+    @PreDestroy
+    public void close() {
+        callbackExecutor.shutdown();
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static String encodeForm(Map<String, String> form) {
+        return form.entrySet().stream()
+                .map(entry -> URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8) + "="
+                        + URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&"));
+    }
+}
@@ -2,16 +2,34 @@ package fr.gouv.dnum.proconnect.web.controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import fr.gouv.dnum.proconnect.web.jwt.JwtAlgorithmEnum;
+import fr.gouv.dnum.proconnect.web.audit.LoginAuditEvent;
+import fr.gouv.dnum.proconnect.web.audit.LoginAuditLogger;
+import fr.gouv.dnum.proconnect.web.handshake.HandshakeRandom;
+import fr.gouv.dnum.proconnect.web.handshake.PendingAuthorization;
+import fr.gouv.dnum.proconnect.web.handshake.PendingAuthorizationStore;
+import fr.gouv.dnum.proconnect.web.jwt.IdTokenValidator;
 import fr.gouv.dnum.proconnect.web.jwt.JwtUtils;
+import fr.gouv.dnum.proconnect.web.metrics.LoginMetrics;
+import fr.gouv.dnum.proconnect.web.oidc.AuthorizeUrlTemplate;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadata;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import fr.gouv.dnum.proconnect.web.replay.ReplayCache;
+import fr.gouv.dnum.proconnect.web.resilience.CallNotPermittedException;
+import fr.gouv.dnum.proconnect.web.resilience.OutboundGuards;
+import fr.gouv.dnum.proconnect.web.resilience.ProConnectEndpoint;
 import fr.gouv.dnum.proconnect.web.response.BodyResponse;
+import fr.gouv.dnum.proconnect.web.session.ProConnectPrincipal;
+import fr.gouv.dnum.proconnect.web.token.TokenRefreshService;
+import fr.gouv.dnum.proconnect.web.userinfo.UserInfoCache;
 import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.v3.oas.annotations.Hidden;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
@@ -27,46 +45,83 @@ import fr.gouv.dnum.proconnect.Constants;
 
 import java.io.IOException;
 import java.net.URI;
-import java.security.SecureRandom;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
 
 @Slf4j
 @RestController
 public class ProConnectController {
 
-    private static final String SESSION_NONCE = "proConnectNonce";
-    private static final String SESSION_STATE = "proConnectState";
-    private static final String SESSION_ACCESS_TOKEN = "proConnectAccessToken";
-    private static final String SESSION_ID_TOKEN = "proConnectIdToken";
-    private static final String SESSION_USER_INFO = "proConnectUserInfo";
+    static final String SESSION_ACCESS_TOKEN = TokenRefreshService.SESSION_ACCESS_TOKEN;
+    static final String SESSION_ID_TOKEN = TokenRefreshService.SESSION_ID_TOKEN;
+    // ProConnectPrincipal (Map des claims userinfo pour les sessions antérieures)
+    static final String SESSION_USER_INFO = "proConnectUserInfo";
+    static final String UNAVAILABLE_MESSAGE = "ProConnect est momentanément indisponible, veuillez réessayer dans quelques instants";
 
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final SecureRandom secureRandom = new SecureRandom();
+    // Générateurs DRBG répartis entre les threads (nonce, state)
+    private final HandshakeRandom handshakeRandom = new HandshakeRandom();
+    // URL d'autorisation pré-construite, reconstruite si la découverte OIDC change d'endpoint
+    private volatile AuthorizeUrlTemplate authorizeUrlTemplate;
+    // Tâches parallèles du callback (vérification de l'ID token, appel userinfo)
+    private final ExecutorService loginExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private record VerifiedLogin(Claims claims, Map<String, Object> userInfo) {
+    }
+
+    // Client HTTP partagé (pool de connexions), voir HttpClientConfig
+    private final RestTemplate restTemplate;
+    // Endpoints issus de la découverte OIDC
+    private final OidcMetadataProvider oidcMetadataProvider;
+    private final LoginMetrics loginMetrics;
+    // Un événement d'audit par connexion, écrit hors du thread de requête
+    private final LoginAuditLogger loginAuditLogger;
+    // State et nonce en attente du callback (session ou cookie chiffré), voir HandshakeConfig
+    private final PendingAuthorizationStore pendingAuthorizations;
+    // Réponses userinfo par sub (désactivé par défaut), voir UserInfoConfig
+    private final UserInfoCache userInfoCache;
+    // Conservation du refresh token et renouvellement des jetons d'accès
+    private final TokenRefreshService tokenRefreshService;
+    // Nonces et jti des id_token déjà utilisés, voir ReplayConfig
+    private final ReplayCache replayCache;
+    // Délais, bulkhead et disjoncteur des appels token et userinfo, voir OutboundGuards
+    private final OutboundGuards outboundGuards;
+
+    public ProConnectController(RestTemplate restTemplate, OidcMetadataProvider oidcMetadataProvider,
+                                LoginMetrics loginMetrics, LoginAuditLogger loginAuditLogger,
+                                PendingAuthorizationStore pendingAuthorizations, UserInfoCache userInfoCache,
+                                TokenRefreshService tokenRefreshService, ReplayCache replayCache,
+                                OutboundGuards outboundGuards) {
+        this.restTemplate = restTemplate;
+        this.oidcMetadataProvider = oidcMetadataProvider;
+        this.loginMetrics = loginMetrics;
+        this.loginAuditLogger = loginAuditLogger;
+        this.pendingAuthorizations = pendingAuthorizations;
+        this.userInfoCache = userInfoCache;
+        this.tokenRefreshService = tokenRefreshService;
+        this.replayCache = replayCache;
+        this.outboundGuards = outboundGuards;
+    }
+
+    private String getLink(HttpServletRequest request, HttpServletResponse response) {
+        String nonce = handshakeRandom.nextNonce();
+        String state = handshakeRandom.nextState();
+
+        pendingAuthorizations.save(new PendingAuthorization(state, nonce), request, response);
+
+        return authorizeUrlTemplate().build(nonce, state);
+    }
 
-    private String getLink(HttpServletRequest request) {
-        long nonce = secureRandom.nextLong();
-        if (nonce < 0) {
-            nonce = Math.abs(nonce);
+    private AuthorizeUrlTemplate authorizeUrlTemplate() {
+        String endpoint = oidcMetadataProvider.current().authorizationEndpoint();
+        AuthorizeUrlTemplate template = authorizeUrlTemplate;
+        if (template == null || !template.authorizationEndpoint().equals(endpoint)) {
+            template = AuthorizeUrlTemplate.of(endpoint);
+            authorizeUrlTemplate = template;
         }
-        String state = "init-" + (nonce - 100);
-
-        HttpSession session = request.getSession(true);
-        session.setAttribute(SESSION_NONCE, nonce);
-        session.setAttribute(SESSION_STATE, state);
-
-        // Construction sûre de l'URL avec encodage correct
-        String url = org.springframework.web.util.UriComponentsBuilder
-                .fromHttpUrl(Constants.ProConnect.AUTH_ENDPOINT)
-                .queryParam("client_id", Constants.ProConnect.CLIENT_ID)
-                .queryParam("nonce", String.valueOf(nonce))
-                .queryParam("response_type", "code")
-                .queryParam("scope", "openid profile email siret")
-                .queryParam("state", state)
-                .queryParam("redirect_uri", Constants.MyApplication.REDIRECT_URI)
-                .build(false) // ne pas ré-encoder
-                .toUriString();
-
-        return url;
+        return template;
     }
 
     @Operation(
@@ -81,7 +136,7 @@ public class ProConnectController {
                     content = @Content(
                             mediaType = "text/plain",
                             schema = @Schema(type = "string",
-                                    example = "https://fca.integ01.dev-agentconnect.fr/api/v2/authorize?client_id=xxx&nonce=123&response_type=code&scope=openid profile email&state=init-123&redirect_uri=http://localhost:8081/api/proconnect/valid_code")
+                                    example = "https://fca.integ01.dev-agentconnect.fr/api/v2/authorize?client_id=xxx&nonce=123&response_type=code&scope=openid profile email&state=Xq3b0kW9Tz2fQm1rX4o9Zg&redirect_uri=http://localhost:8081/api/proconnect/valid_code")
                     )
             ),
             @ApiResponse(
@@ -94,8 +149,15 @@ public class ProConnectController {
             )
     })
     @GetMapping("/proconnect/link")
+    public String getProConnectLink(HttpServletRequest request, HttpServletResponse response) {
+        return getLink(request, response);
+    }
+
+    /**
+     * Variante sans réponse HTTP, utilisable uniquement avec le stockage en session.
+     */
     public String getProConnectLink(HttpServletRequest request) {
-        return getLink(request);
+        return getLink(request, null);
     }
 
     @Hidden
@@ -132,27 +194,26 @@ public class ProConnectController {
     })
     @GetMapping("/proconnect/valid_code")
     public String getProConnectToken(HttpServletRequest request,
+                                   HttpServletResponse response,
                                    @RequestParam("code") String code,
                                    @RequestParam("state") String state,
                                    @RequestParam("iss") String iss) {
 
         String email = null;
 
-        JwtAlgorithmEnum jwtAlgorithmEnum = JwtAlgorithmEnum.ES256;
+        log.debug("Callback ProConnect : state={}, iss={}", state, iss);
 
-        log.info("code : " + code);
-        log.info("state : " + state);
-        log.info("iss : " + iss);
+        Timer.Sample loginSample = loginMetrics.startLogin();
+        long start = System.nanoTime();
 
-        HttpSession session = request.getSession(false);
-        if (session == null) {
-            log.warn("Session introuvable lors du callback ProConnect");
-            return "Erreur";
-        }
-
-        String expectedState = (String) session.getAttribute(SESSION_STATE);
-        if (expectedState == null || !expectedState.equals(state)) {
-            log.warn("State invalide. Attendu={}, Reçu={}", expectedState, state);
+        PendingAuthorization pending;
+        try {
+            pending = pendingAuthorizations.consume(state, request, response);
+        } catch (SecurityException e) {
+            log.warn("Callback ProConnect refusé ({}), state reçu : {}", e.getMessage(), state);
+            LoginMetrics.Rejection rejection = loginMetrics.reject(e);
+            loginMetrics.stopLogin(loginSample, "failure");
+            loginAuditLogger.publish(LoginAuditEvent.failure(rejection, iss, elapsedMillis(start)));
             return "Erreur";
         }
 
@@ -166,9 +227,6 @@ public class ProConnectController {
         form.add("client_secret", Constants.ProConnect.CLIENT_SECRET);
         form.add("redirect_uri", Constants.MyApplication.REDIRECT_URI);
 
-        // Créer une instance de RestTemplate
-        RestTemplate restTemplate = new RestTemplate();
-
         // Configuration des headers (exemple : JSON)
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
@@ -178,10 +236,9 @@ public class ProConnectController {
 
         // Effectuer la requête POST
         try {
-            ResponseEntity<String> tokenResponse = restTemplate.postForEntity(Constants.ProConnect.TOKEN_ENDPOINT, requestEntity, String.class);
-
-            // Afficher la réponse (ou la traiter selon vos besoins)
-            log.info("Réponse : " + tokenResponse.getBody());
+            ResponseEntity<String> tokenResponse = loginMetrics.time(LoginMetrics.Stage.TOKEN_EXCHANGE, () ->
+                    outboundGuards.get(ProConnectEndpoint.TOKEN).call(() ->
+                            restTemplate.postForEntity(oidcMetadataProvider.current().tokenEndpoint(), requestEntity, String.class)));
 
             String responseBody = tokenResponse.getBody();
 
@@ -195,98 +252,183 @@ public class ProConnectController {
             bodyResponse.setTokenType(jsonObject.get("token_type").asText());
             bodyResponse.setExpiresIn(jsonObject.get("expires_in").asLong());
 
-            // Afficher les informations
-            log.info("Access Token : " + bodyResponse.getAccessToken());
-            log.info("Refresh Token : " + bodyResponse.getRefreshToken());
-            log.info("Token Type : " + bodyResponse.getTokenType());
-            log.info("Expires In : " + bodyResponse.getExpiresIn());
-            log.info("ID Token : " + bodyResponse.getIdToken());
+            // Les jetons eux-mêmes ne sont jamais journalisés
+            log.debug("Jetons reçus : type={}, expires_in={}", bodyResponse.getTokenType(), bodyResponse.getExpiresIn());
 
-            // Décoder le JWT et le lire
-            Claims claims = JwtUtils.verifyJwt(bodyResponse.getIdToken(), jwtAlgorithmEnum);
+            // Vérifier l'ID token et récupérer userinfo en parallèle
+            VerifiedLogin verified = verifyIdTokenAndFetchUserInfo(bodyResponse, pending);
+            Claims claims = verified.claims();
+            Map<String, Object> userInfo = verified.userInfo();
 
+            log.debug("JWT vérifié : sub={}, exp={}", claims.getSubject(), claims.getExpiration());
 
-            String issuer = claims.getIssuer();
-            LinkedHashSet<String> aud = claims.get("aud", LinkedHashSet.class);
-            String nonce = claims.get("nonce", String.class);
-            Date exp = claims.getExpiration();
+            // seuls les claims utiles sont conservés en session, voir ProConnectPrincipal
+            ProConnectPrincipal principal = ProConnectPrincipal.from(claims, userInfo);
+            email = principal.email();
 
-            if (!issuer.startsWith(Constants.ProConnect.ENVIRONMENT))
-                throw new SecurityException("bad iss");
-
-            if (!aud.contains(Constants.ProConnect.CLIENT_ID))
-                throw new SecurityException("bad aud");
+            loginMetrics.time(LoginMetrics.Stage.SESSION_WRITE, () -> {
+                // avec le stockage par cookie, la session n'est créée qu'une fois la connexion validée
+                HttpSession session = request.getSession(true);
+                tokenRefreshService.store(session, bodyResponse);
+                session.setAttribute(SESSION_USER_INFO, principal);
+                return null;
+            });
 
-            if (exp == null || exp.before(new Date(System.currentTimeMillis() - 120000)))
-                throw new SecurityException("expired");
+            loginMetrics.stopLogin(loginSample, "success");
+            loginAuditLogger.publish(LoginAuditEvent.success(claims.getSubject(), email, principal.siret(),
+                    iss, elapsedMillis(start), bodyResponse.getAccessToken(), bodyResponse.getIdToken()));
+            return "[Connecté : " + email+"]";
 
-            System.out.println("nonce = " + nonce);
-            System.out.println("session nonce = " + session.getAttribute(SESSION_NONCE));
+        } catch (Exception e) {
+            // Gestion des erreurs
+            LoginMetrics.Rejection rejection = loginMetrics.reject(e);
+            loginAuditLogger.publish(LoginAuditEvent.failure(rejection, iss, elapsedMillis(start)));
+            if (isUnavailable(e)) {
+                log.warn("Callback ProConnect interrompu : {}", e.getMessage());
+                loginMetrics.stopLogin(loginSample, "failure");
+                return unavailable(response);
+            }
+            log.error(e.getMessage(), e);
+        }
 
-            if (!Objects.equals(nonce, session.getAttribute(SESSION_NONCE).toString()))
-                throw new SecurityException("bad nonce");
-            /*
-            if (!expectedIssuer.equals(issuer)) throw new SecurityException("bad iss");
-            if (aud == null || !aud.contains(expectedClientId)) throw new SecurityException("bad aud");
-            if (exp == null || exp.before(new Date(System.currentTimeMillis() - 120_000))) throw new SecurityException("expired");
-            if (!Objects.equals(nonce, sessionNonce)) throw new SecurityException("bad nonce");
-            */
+        loginMetrics.stopLogin(loginSample, "failure");
+        return "Erreur";
+    }
 
-            // Afficher les informations pour valider le résultat
-            log.info("JWT vérifié avec succès !");
-            log.info("Subject : " + claims.getSubject());
-            log.info("Expiration : " + claims.getExpiration());
+    /**
+     * Variante sans réponse HTTP, utilisable uniquement avec le stockage en session.
+     */
+    public String getProConnectToken(HttpServletRequest request, String code, String state, String iss) {
+        return getProConnectToken(request, null, code, state, iss);
+    }
 
-            log.info("Access token : " + bodyResponse.getAccessToken());
+    /**
+     * Vérifier l'ID token (signature, iss, aud, exp, nonce, rejeu) et récupérer les informations
+     * utilisateur. Les deux étapes sont indépendantes une fois le jeton d'accès connu : elles
+     * s'exécutent en parallèle, et un ID token invalide annule l'appel userinfo. L'erreur remontée ne
+     * dépend pas de l'ordre d'exécution : celle de l'ID token d'abord, celle de userinfo seulement si
+     * l'ID token est valide, comme en séquentiel.
+     */
+    private VerifiedLogin verifyIdTokenAndFetchUserInfo(BodyResponse bodyResponse, PendingAuthorization pending) throws Exception {
+        if (userInfoCache.isEnabled()) {
+            // le cache est indexé par le sub vérifié : les deux étapes restent séquentielles
+            Claims claims = verifyIdToken(bodyResponse, pending);
+            Map<String, Object> userInfo = userInfoCache.get(claims.getSubject());
+            if (userInfo == null) {
+                userInfo = getUserInfo(bodyResponse.getAccessToken());
+                cacheUserInfo(claims.getSubject(), userInfo, bodyResponse.getExpiresIn());
+            }
+            return new VerifiedLogin(claims, userInfo);
+        }
 
-            Map<String, Object> userInfo = getUserInfo(bodyResponse.getAccessToken(), jwtAlgorithmEnum);
-            for (Map.Entry<String, Object> entry : userInfo.entrySet()) {
-                log.info(entry.getKey() + " => " + entry.getValue());
-                if (entry.getKey().equals("email")) {
-                    email = entry.getValue().toString();
-                }
+        Future<Claims> idTokenTask = loginExecutor.submit(() -> verifyIdToken(bodyResponse, pending));
+        Future<Map<String, Object>> userInfoTask = loginExecutor.submit(() -> getUserInfo(bodyResponse.getAccessToken()));
+        try {
+            Claims claims;
+            try {
+                claims = idTokenTask.get();
+            } catch (ExecutionException e) {
+                userInfoTask.cancel(true);
+                throw failureOf(e);
             }
+            try {
+                return new VerifiedLogin(claims, userInfoTask.get());
+            } catch (ExecutionException e) {
+                throw failureOf(e);
+            }
+        } catch (InterruptedException e) {
+            idTokenTask.cancel(true);
+            userInfoTask.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
 
-            session.setAttribute(SESSION_ACCESS_TOKEN, bodyResponse.getAccessToken());
-            session.setAttribute(SESSION_ID_TOKEN, bodyResponse.getIdToken());
-            session.setAttribute(SESSION_USER_INFO, userInfo);
+    private Claims verifyIdToken(BodyResponse bodyResponse, PendingAuthorization pending) throws Exception {
+        OidcMetadata metadata = oidcMetadataProvider.current();
+        return loginMetrics.time(LoginMetrics.Stage.ID_TOKEN_VERIFICATION, () -> {
+            Claims idTokenClaims = JwtUtils.verifyJwt(bodyResponse.getIdToken(), metadata.idTokenAlgorithms());
+            IdTokenValidator.validate(idTokenClaims, pending.nonce(), metadata.issuer());
+            IdTokenValidator.checkReplay(idTokenClaims, replayCache);
+            pendingAuthorizations.complete(pending);
+            return idTokenClaims;
+        });
+    }
 
-            return "[Connecté : " + email+"]";
+    private static Exception failureOf(ExecutionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof Exception exception ? exception : new IllegalStateException(cause);
+    }
 
-        } catch (Exception e) {
-            // Gestion des erreurs
-            log.error(e.getMessage(), e);
+    /**
+     * ProConnect n'a pas répondu dans le délai, ou les appels sont suspendus (disjoncteur ouvert,
+     * bulkhead plein), éventuellement pendant le téléchargement du JWKS.
+     */
+    static boolean isUnavailable(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause() != e ? e.getCause() : null) {
+            if (e instanceof CallNotPermittedException || e instanceof HttpTimeoutException) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        return "Erreur";
+    /**
+     * Page d'erreur explicite (503) lorsque ProConnect est indisponible.
+     */
+    static String unavailable(HttpServletResponse response) {
+        if (response != null) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+        return UNAVAILABLE_MESSAGE;
     }
 
-    private Map<String, Object> getUserInfo(String accessToken, JwtAlgorithmEnum jwtAlgorithmEnum) throws Exception {
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
 
-        log.info("Get User Info :: accessToken : " + accessToken);
+    private Map<String, Object> getUserInfo(String accessToken) throws Exception {
 
         // Préparer l'en-tête Authorization avec le token d'accès
         HttpHeaders headers = new HttpHeaders();
         headers.set("Authorization", "Bearer " + accessToken);
 
         // Construire la requête
-        RequestEntity<String> request = new RequestEntity<>(headers, HttpMethod.GET, new URI(Constants.ProConnect.USERINFO_ENDPOINT));
+        OidcMetadata metadata = oidcMetadataProvider.current();
+        RequestEntity<String> request = new RequestEntity<>(headers, HttpMethod.GET, new URI(metadata.userinfoEndpoint()));
 
         // Appeler le endpoint "/userinfo" via RestTemplate
-        RestTemplate restTemplate = new RestTemplate();
-
-        ResponseEntity<String> resp = restTemplate.exchange(request.getUrl(), HttpMethod.GET, request, String.class);
+        ResponseEntity<String> resp = loginMetrics.time(LoginMetrics.Stage.USERINFO_FETCH, () ->
+                outboundGuards.get(ProConnectEndpoint.USERINFO).call(() ->
+                        restTemplate.exchange(request.getUrl(), HttpMethod.GET, request, String.class)));
 
-        Claims claims_ = JwtUtils.verifyJwt(resp.getBody(), jwtAlgorithmEnum);
+        Claims claims_ = loginMetrics.time(LoginMetrics.Stage.USERINFO_VERIFICATION, () ->
+                JwtUtils.verifyJwt(resp.getBody(), metadata.userinfoAlgorithms()));
 
-        Map<String, Object> userInfo = new HashMap<>();
-        claims_.forEach((k, v) -> {
-            log.info(k + " : " + v);
-            userInfo.put(k, v);
-        });
+        Map<String, Object> userInfo = new HashMap<>(claims_);
+        log.debug("UserInfo reçu : {}", userInfo.keySet());
         return userInfo;
     }
 
+    /**
+     * Mettre en cache la réponse userinfo, uniquement si elle concerne bien le sub de l'ID token.
+     */
+    private void cacheUserInfo(String sub, Map<String, Object> userInfo, Long expiresIn) {
+        if (sub != null && sub.equals(userInfo.get("sub"))) {
+            userInfoCache.put(sub, userInfo, expiresIn != null ? Duration.ofSeconds(expiresIn) : null);
+        }
+    }
+
+    /**
+     * Claims de l'utilisateur connecté, qu'il soit conservé sous forme de {@link ProConnectPrincipal}
+     * ou de Map (sessions créées avant son introduction).
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> userInfoOf(Object sessionUserInfo) {
+        return sessionUserInfo instanceof ProConnectPrincipal principal
+                ? principal.toClaims() : (Map<String, Object>) sessionUserInfo;
+    }
+
     @Operation(
             summary = "Déconnexion de ProConnect",
             description = "Déconnecte l'utilisateur de ProConnect en le redirigeant vers l'endpoint de déconnexion avec les paramètres nécessaires",
@@ -311,19 +453,17 @@ public class ProConnectController {
     public void disconnect(HttpServletRequest request, HttpServletResponse response) throws IOException {
         HttpSession session = request.getSession(false);
         if (session != null) {
-            log.info("Logout Session ID : " + session.getId());
+            log.debug("Logout Session ID : {}", session.getId());
             String idToken = (String) session.getAttribute(SESSION_ID_TOKEN);
-            Long nonce = (Long) session.getAttribute(SESSION_NONCE);
 
             org.springframework.web.util.UriComponentsBuilder b = org.springframework.web.util.UriComponentsBuilder
-                    .fromHttpUrl(Constants.ProConnect.DISCONNECT_ENDPOINT);
+                    .fromHttpUrl(oidcMetadataProvider.current().endSessionEndpoint());
 
             if (idToken != null) {
                 b.queryParam("id_token_hint", idToken);
             }
-            if (nonce != null) {
-                b.queryParam("state", "init-" + (nonce - 100));
-            }
+            // state propre à la déconnexion : rien de la connexion n'apparaît dans l'URL
+            b.queryParam("state", handshakeRandom.nextState());
             b.queryParam("post_logout_redirect_uri", Constants.MyApplication.POST_INTERNAL_LOGOUT_REDIRECT_URI);
 
             String url = b.build(true).toUriString();
@@ -342,8 +482,9 @@ public class ProConnectController {
         HttpSession session = request.getSession(false);
         if (session!=null && session.getAttribute(SESSION_USER_INFO)!=null) {
             // Récupère les infos user gardées en session
-            Map<String, Object> userInfo = (Map<String, Object>) session.getAttribute(SESSION_USER_INFO);
-            log.info("Internal logout Session ID : " + session.getId());
+            Map<String, Object> userInfo = userInfoOf(session.getAttribute(SESSION_USER_INFO));
+            log.debug("Internal logout Session ID : {}", session.getId());
+            userInfoCache.invalidate(Objects.toString(userInfo.get("sub"), null));
             // Invalidation de la session
             session.invalidate();
             // Construction de la réponse String
@@ -354,4 +495,9 @@ public class ProConnectController {
         }
         return sb.toString();
     }
+
+    @PreDestroy
+    public void close() {
+        loginExecutor.shutdown();
+    }
 }
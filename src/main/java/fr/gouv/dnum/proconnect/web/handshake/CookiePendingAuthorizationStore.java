@@ -0,0 +1,177 @@
+package fr.gouv.dnum.proconnect.web.handshake;
+
+import fr.gouv.dnum.proconnect.web.replay.ReplayCache;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Stockage sans état serveur : le couple state / nonce est chiffré et authentifié (AES-256-GCM)
+ * dans un cookie de courte durée. Aucune session n'est créée avant la connexion effective et
+ * n'importe quelle instance peut traiter le callback, pourvu qu'elles partagent la clé.
+ * <p>
+ * Le cookie est lié au {@code state} reçu, expire après {@code ttl} et n'est accepté qu'une fois :
+ * les {@code state} des connexions abouties sont mémorisés par le {@link ReplayCache} jusqu'à
+ * l'expiration de leur cookie (localement, ou sur toutes les instances si le {@code ReplayCache} est
+ * partagé). Ils ne le sont qu'après l'échange du code, dans {@link #complete} : des couples
+ * lien + callback forgés en masse ne remplissent pas le {@code ReplayCache} au détriment des vraies
+ * connexions.
+ */
+@Slf4j
+public class CookiePendingAuthorizationStore implements PendingAuthorizationStore {
+
+    public static final String COOKIE_NAME = "PROCONNECT_HANDSHAKE";
+
+    private static final String COOKIE_PATH = "/proconnect";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    // version 2 : nonce base64url précédé de sa longueur (version 1 : nonce entier)
+    private static final byte VERSION = 2;
+    private static final byte[] AAD = COOKIE_NAME.getBytes(StandardCharsets.US_ASCII);
+
+    private final SecretKey key;
+    private final Duration ttl;
+    private final boolean secure;
+    private final Clock clock;
+    private final ReplayCache replayCache;
+    private final HandshakeRandom handshakeRandom = new HandshakeRandom();
+
+    public CookiePendingAuthorizationStore(SecretKey key, Duration ttl, boolean secure, Clock clock, ReplayCache replayCache) {
+        this.key = key;
+        this.ttl = ttl;
+        this.secure = secure;
+        this.clock = clock;
+        this.replayCache = replayCache;
+    }
+
+    @Override
+    public void save(PendingAuthorization pending, HttpServletRequest request, HttpServletResponse response) {
+        if (response == null) {
+            throw new IllegalStateException("La réponse HTTP est nécessaire pour écrire le cookie de connexion");
+        }
+        long expiresAt = clock.instant().plus(ttl).getEpochSecond();
+        byte[] nonce = pending.nonce().getBytes(StandardCharsets.US_ASCII);
+        byte[] state = pending.state().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer plain = ByteBuffer.allocate(1 + Long.BYTES + 1 + nonce.length + state.length)
+                .put(VERSION)
+                .putLong(expiresAt)
+                .put((byte) nonce.length)
+                .put(nonce)
+                .put(state);
+
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie(encrypt(plain.array()), ttl).toString());
+    }
+
+    @Override
+    public PendingAuthorization consume(String state, HttpServletRequest request, HttpServletResponse response) {
+        String value = readCookie(request);
+        if (value == null) {
+            throw new SecurityException("no session");
+        }
+        if (response != null) {
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie("", Duration.ZERO).toString());
+        }
+
+        ByteBuffer plain;
+        try {
+            plain = ByteBuffer.wrap(decrypt(value));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            log.warn("Cookie de connexion invalide : {}", e.getMessage());
+            throw new SecurityException("bad state");
+        }
+        if (plain.remaining() < 1 + Long.BYTES + 1 || plain.get() != VERSION) {
+            throw new SecurityException("bad state");
+        }
+        long expiresAt = plain.getLong();
+        int nonceLength = plain.get() & 0xFF;
+        if (plain.remaining() < nonceLength) {
+            throw new SecurityException("bad state");
+        }
+        byte[] nonceBytes = new byte[nonceLength];
+        plain.get(nonceBytes);
+        String nonce = new String(nonceBytes, StandardCharsets.US_ASCII);
+        String expectedState = StandardCharsets.UTF_8.decode(plain).toString();
+
+        if (!expectedState.equals(state)) {
+            throw new SecurityException("bad state");
+        }
+        if (clock.instant().getEpochSecond() >= expiresAt) {
+            throw new SecurityException("handshake expired");
+        }
+        return new PendingAuthorization(expectedState, nonce);
+    }
+
+    @Override
+    public void complete(PendingAuthorization pending) {
+        // le cookie consommé expire au plus tard dans ttl
+        if (!replayCache.markUsed(ReplayCache.Kind.STATE, pending.state(), clock.instant().plus(ttl))) {
+            throw new SecurityException("handshake replayed");
+        }
+    }
+
+    private ResponseCookie cookie(String value, Duration maxAge) {
+        // SameSite=Lax : le cookie accompagne la redirection de retour de ProConnect (GET de premier niveau)
+        return ResponseCookie.from(COOKIE_NAME, value)
+                .path(COOKIE_PATH)
+                .httpOnly(true)
+                .secure(secure)
+                .sameSite("Lax")
+                .maxAge(maxAge)
+                .build();
+    }
+
+    private static String readCookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    private String encrypt(byte[] plain) {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            handshakeRandom.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(AAD);
+            byte[] sealed = ByteBuffer.allocate(IV_LENGTH + cipher.getOutputSize(plain.length))
+                    .put(iv)
+                    .put(cipher.doFinal(plain))
+                    .array();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(sealed);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Chiffrement du cookie de connexion impossible", e);
+        }
+    }
+
+    private byte[] decrypt(String value) throws GeneralSecurityException {
+        byte[] sealed = Base64.getUrlDecoder().decode(value);
+        if (sealed.length <= IV_LENGTH) {
+            throw new GeneralSecurityException("cookie tronqué");
+        }
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_LENGTH));
+        cipher.updateAAD(AAD);
+        return cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH);
+    }
+}
@@ -0,0 +1,61 @@
+package fr.gouv.dnum.proconnect.web.handshake;
+
+import fr.gouv.dnum.proconnect.web.replay.ReplayCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Choix du stockage du couple state / nonce pendant la connexion ({@code proconnect.handshake.mode}) :
+ * <ul>
+ *     <li>{@code session} (défaut) : session HTTP</li>
+ *     <li>{@code memory} : table en mémoire bornée, sans session, liée au navigateur par un cookie</li>
+ *     <li>{@code cookie} : cookie chiffré, sans état serveur</li>
+ * </ul>
+ */
+@Slf4j
+@Configuration
+public class HandshakeConfig {
+
+    @Bean
+    public PendingAuthorizationStore pendingAuthorizationStore(
+            @Value("${proconnect.handshake.mode:session}") String mode,
+            @Value("${proconnect.handshake.ttl:5m}") Duration ttl,
+            @Value("${proconnect.handshake.max-pending:100000}") int maxPending,
+            @Value("${proconnect.handshake.cookie-key:}") String cookieKey,
+            @Value("${proconnect.handshake.cookie-secure:true}") boolean cookieSecure,
+            ReplayCache replayCache,
+            MeterRegistry meterRegistry) throws NoSuchAlgorithmException {
+        return switch (mode) {
+            case "memory" -> new InMemoryPendingAuthorizationStore(maxPending, ttl, cookieSecure, Clock.systemUTC(), meterRegistry);
+            case "session" -> new SessionPendingAuthorizationStore();
+            case "cookie" -> new CookiePendingAuthorizationStore(cookieKey(cookieKey), ttl, cookieSecure, Clock.systemUTC(), replayCache);
+            default -> throw new IllegalArgumentException("proconnect.handshake.mode inconnu : " + mode);
+        };
+    }
+
+    private static SecretKey cookieKey(String base64Key) throws NoSuchAlgorithmException {
+        if (base64Key.isBlank()) {
+            log.warn("proconnect.handshake.cookie-key non renseignée : clé générée au démarrage, "
+                    + "les cookies de connexion ne seront acceptés que par cette instance");
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256);
+            return generator.generateKey();
+        }
+        byte[] key = Base64.getDecoder().decode(base64Key);
+        if (key.length != 32) {
+            throw new IllegalArgumentException("proconnect.handshake.cookie-key doit contenir 32 octets encodés en base64");
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+}
@@ -0,0 +1,105 @@
+package fr.gouv.dnum.proconnect.web.handshake;
+
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Aléa de la poignée de main OIDC : nonce, state, vecteurs d'initialisation.
+ * <p>
+ * Un {@link SecureRandom} unique sérialise les threads qui génèrent un lien de connexion. Ici,
+ * plusieurs générateurs DRBG (NIST SP 800-90A, amorcés une fois par la source d'entropie du
+ * système puis sans lecture bloquante) sont répartis entre les threads selon leur identifiant.
+ * Cette répartition convient aussi aux threads virtuels, contrairement à un {@code ThreadLocal}
+ * qui amorcerait un générateur par requête. Chaque générateur produit ses octets par blocs, afin
+ * d'amortir le coût fixe d'un appel DRBG sur plusieurs nonces.
+ */
+public final class HandshakeRandom {
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+    private static final int BLOCK_SIZE = 512;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    public HandshakeRandom() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    HandshakeRandom(int minStripes) {
+        int size = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1;
+        stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(newDrbg());
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Nonce de 128 bits encodé en base64url, comme le state.
+     */
+    public String nextNonce() {
+        return nextToken();
+    }
+
+    /**
+     * State de 128 bits encodé en base64url (22 caractères, sans encodage supplémentaire dans une URL).
+     */
+    public String nextState() {
+        return nextToken();
+    }
+
+    private String nextToken() {
+        byte[] bytes = new byte[16];
+        stripe().nextBytes(bytes);
+        return BASE64_URL.encodeToString(bytes);
+    }
+
+    public void nextBytes(byte[] bytes) {
+        stripe().nextBytes(bytes);
+    }
+
+    private Stripe stripe() {
+        return stripes[(int) Thread.currentThread().threadId() & mask];
+    }
+
+    /**
+     * Générateur DRBG et bloc d'octets pas encore distribués.
+     */
+    private static final class Stripe {
+        private final SecureRandom drbg;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private int position = BLOCK_SIZE;
+
+        Stripe(SecureRandom drbg) {
+            this.drbg = drbg;
+        }
+
+        synchronized void nextBytes(byte[] bytes) {
+            int copied = 0;
+            while (copied < bytes.length) {
+                if (position == BLOCK_SIZE) {
+                    drbg.nextBytes(block);
+                    position = 0;
+                }
+                int length = Math.min(bytes.length - copied, BLOCK_SIZE - position);
+                System.arraycopy(block, position, bytes, copied, length);
+                // les octets distribués ne restent pas en mémoire
+                Arrays.fill(block, position, position + length, (byte) 0);
+                position += length;
+                copied += length;
+            }
+        }
+    }
+
+    private static SecureRandom newDrbg() {
+        try {
+            return SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, null));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("DRBG indisponible", e);
+        }
+    }
+}
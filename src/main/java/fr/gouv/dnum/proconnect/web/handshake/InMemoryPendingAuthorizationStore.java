@@ -0,0 +1,155 @@
+package fr.gouv.dnum.proconnect.web.handshake;
+
+import fr.gouv.dnum.proconnect.web.cache.BoundedTtlCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Demandes d'autorisation en attente, en mémoire et indexées par {@code state}, sans session HTTP.
+ * <p>
+ * Le nombre d'entrées est plafonné à {@code maxSize} et chacune expire après {@code ttl} : une
+ * connexion abandonnée n'occupe plus la mémoire jusqu'à l'expiration de la session du conteneur.
+ * La durée de vie étant la même pour toutes les entrées, l'ordre d'insertion est aussi l'ordre
+ * d'expiration : l'éviction ({@link BoundedTtlCache}) se limite à dépiler la tête d'une file, au fil
+ * des écritures.
+ * <p>
+ * Chaque entrée est liée au navigateur qui a demandé le lien : {@link #save} pose un cookie
+ * aléatoire {@code HttpOnly} de durée {@code ttl} ({@value #COOKIE_NAME}, réutilisé s'il est déjà
+ * présent, pour plusieurs onglets) et l'entrée n'en conserve que l'empreinte SHA-256. Un callback
+ * présenté sans ce cookie, ou avec celui d'un autre navigateur, est refusé sans consommer l'entrée :
+ * un {@code state} obtenu par un tiers ne permet pas de terminer sa connexion dans le navigateur
+ * d'une victime. La table étant locale, le callback doit revenir sur la même instance (affinité du
+ * répartiteur de charge sur ce cookie) ; sans affinité, utiliser le mode {@code cookie}.
+ * <ul>
+ *     <li>{@code proconnect.handshake.pending} : demandes en attente</li>
+ *     <li>{@code proconnect.handshake.evictions{cause}} : évictions ({@code expired}, {@code capacity})</li>
+ * </ul>
+ */
+public class InMemoryPendingAuthorizationStore implements PendingAuthorizationStore {
+
+    public static final String COOKIE_NAME = "PROCONNECT_BINDING";
+
+    private static final String COOKIE_PATH = "/proconnect";
+    private static final int BINDING_BYTES = 16;
+
+    // binding : empreinte SHA-256 du cookie du navigateur
+    private record Entry(String state, String nonce, long expiresAt, byte[] binding) {
+    }
+
+    private final BoundedTtlCache<String, Entry> entries;
+    private final Duration ttl;
+    private final long ttlMillis;
+    private final boolean secure;
+    private final Clock clock;
+    private final HandshakeRandom handshakeRandom = new HandshakeRandom();
+    private final Counter expiredEvictions;
+    private final Counter capacityEvictions;
+
+    public InMemoryPendingAuthorizationStore(int maxSize, Duration ttl, boolean secure, Clock clock, MeterRegistry registry) {
+        this.ttl = ttl;
+        this.ttlMillis = ttl.toMillis();
+        this.secure = secure;
+        this.clock = clock;
+        this.expiredEvictions = Counter.builder("proconnect.handshake.evictions")
+                .description("Demandes d'autorisation évincées")
+                .tag("cause", "expired")
+                .register(registry);
+        this.capacityEvictions = Counter.builder("proconnect.handshake.evictions")
+                .description("Demandes d'autorisation évincées")
+                .tag("cause", "capacity")
+                .register(registry);
+        Counter expired = expiredEvictions;
+        Counter capacity = capacityEvictions;
+        this.entries = new BoundedTtlCache<>(maxSize, clock, eviction ->
+                (eviction == BoundedTtlCache.Eviction.EXPIRED ? expired : capacity).increment());
+        Gauge.builder("proconnect.handshake.pending", entries, BoundedTtlCache::size)
+                .description("Demandes d'autorisation en attente du callback")
+                .register(registry);
+    }
+
+    @Override
+    public void save(PendingAuthorization pending, HttpServletRequest request, HttpServletResponse response) {
+        if (response == null) {
+            throw new IllegalStateException("La réponse HTTP est nécessaire pour écrire le cookie de connexion");
+        }
+        String binding = readCookie(request);
+        if (binding == null) {
+            byte[] random = new byte[BINDING_BYTES];
+            handshakeRandom.nextBytes(random);
+            binding = Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+        }
+        // (re)poser le cookie : sa durée de vie couvre la dernière demande
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie(binding, ttl).toString());
+
+        Entry entry = new Entry(pending.state(), pending.nonce(), clock.millis() + ttlMillis, sha256(binding));
+        entries.put(entry.state(), entry, entry.expiresAt());
+    }
+
+    @Override
+    public PendingAuthorization consume(String state, HttpServletRequest request, HttpServletResponse response) {
+        String binding = request != null ? readCookie(request) : null;
+        if (binding == null) {
+            throw new SecurityException("no session");
+        }
+        // entrée lue même expirée : le refus est alors motivé par l'expiration
+        Entry entry = state != null ? entries.peek(state) : null;
+        if (entry == null || !MessageDigest.isEqual(entry.binding(), sha256(binding)) || !entries.remove(state, entry)) {
+            // state inconnu, déjà consommé, évincé, ou lié à un autre navigateur (l'entrée reste alors disponible)
+            throw new SecurityException("bad state");
+        }
+        if (clock.millis() >= entry.expiresAt()) {
+            expiredEvictions.increment();
+            throw new SecurityException("handshake expired");
+        }
+        return new PendingAuthorization(entry.state(), entry.nonce());
+    }
+
+    private ResponseCookie cookie(String value, Duration maxAge) {
+        // SameSite=Lax : le cookie accompagne la redirection de retour de ProConnect (GET de premier niveau)
+        return ResponseCookie.from(COOKIE_NAME, value)
+                .path(COOKIE_PATH)
+                .httpOnly(true)
+                .secure(secure)
+                .sameSite("Lax")
+                .maxAge(maxAge)
+                .build();
+    }
+
+    private static String readCookie(HttpServletRequest request) {
+        Cookie[] cookies = request != null ? request.getCookies() : null;
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.US_ASCII));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,8 @@
+package fr.gouv.dnum.proconnect.web.handshake;
+
+/**
+ * Demande d'autorisation en attente du retour de ProConnect : le {@code state} transmis dans
+ * l'URL d'autorisation et le {@code nonce} attendu dans l'ID token.
+ */
+public record PendingAuthorization(String state, String nonce) {
+}
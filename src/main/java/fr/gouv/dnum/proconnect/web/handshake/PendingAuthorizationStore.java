@@ -0,0 +1,40 @@
+package fr.gouv.dnum.proconnect.web.handshake;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Conservation du couple state / nonce entre {@code /proconnect/link} et le callback.
+ * <p>
+ * Les refus sont signalés par une {@link SecurityException} dont le message correspond au motif
+ * de rejet ({@code "no session"}, {@code "bad state"}, {@code "handshake expired"},
+ * {@code "handshake replayed"}), comme pour {@link fr.gouv.dnum.proconnect.web.jwt.IdTokenValidator}.
+ */
+public interface PendingAuthorizationStore {
+
+    /**
+     * Enregistrer une demande d'autorisation.
+     *
+     * @param response réponse en cours, nécessaire aux implémentations qui écrivent un cookie
+     */
+    void save(PendingAuthorization pending, HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * Retirer et retourner la demande correspondant au {@code state} reçu : une demande ne peut
+     * être consommée qu'une fois.
+     *
+     * @param response réponse en cours, peut être {@code null}
+     * @throws SecurityException si aucune demande valide ne correspond
+     */
+    PendingAuthorization consume(String state, HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * Confirmer une demande consommée dont le code a été échangé et l'ID token validé. Les
+     * implémentations qui mémorisent les demandes consommées le font ici : un callback forgé, qui
+     * n'obtient pas de jeton, n'occupe pas le {@link fr.gouv.dnum.proconnect.web.replay.ReplayCache}.
+     *
+     * @throws SecurityException si la demande a déjà été confirmée
+     */
+    default void complete(PendingAuthorization pending) {
+    }
+}
@@ -0,0 +1,38 @@
+package fr.gouv.dnum.proconnect.web.handshake;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Stockage historique dans la session HTTP : impose une session (et donc des sessions
+ * persistantes côté répartiteur de charge) dès l'affichage du lien de connexion.
+ */
+public class SessionPendingAuthorizationStore implements PendingAuthorizationStore {
+
+    public static final String SESSION_NONCE = "proConnectNonce";
+    public static final String SESSION_STATE = "proConnectState";
+
+    @Override
+    public void save(PendingAuthorization pending, HttpServletRequest request, HttpServletResponse response) {
+        HttpSession session = request.getSession(true);
+        session.setAttribute(SESSION_NONCE, pending.nonce());
+        session.setAttribute(SESSION_STATE, pending.state());
+    }
+
+    @Override
+    public PendingAuthorization consume(String state, HttpServletRequest request, HttpServletResponse response) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            throw new SecurityException("no session");
+        }
+        String expectedState = (String) session.getAttribute(SESSION_STATE);
+        Object nonce = session.getAttribute(SESSION_NONCE);
+        if (expectedState == null || !expectedState.equals(state) || !(nonce instanceof String)) {
+            throw new SecurityException("bad state");
+        }
+        session.removeAttribute(SESSION_STATE);
+        session.removeAttribute(SESSION_NONCE);
+        return new PendingAuthorization(expectedState, (String) nonce);
+    }
+}
@@ -0,0 +1,107 @@
+package fr.gouv.dnum.proconnect.web.http;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * Client HTTP sortant partagé pour les appels à ProConnect (token, userinfo, JWKS).
+ * <p>
+ * Par défaut, Apache HttpClient avec un pool de connexions keep-alive borné par route, afin
+ * de réutiliser les connexions TLS entre deux connexions utilisateur. Avec
+ * {@code proconnect.http.http2=true}, le client HTTP du JDK est utilisé en HTTP/2 (multiplexage
+ * sur une seule connexion : le délai d'acquisition du pool ne s'applique alors pas).
+ */
+@Slf4j
+@Configuration
+public class HttpClientConfig {
+
+    @Value("${proconnect.http.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${proconnect.http.read-timeout:5s}")
+    private Duration readTimeout;
+
+    @Value("${proconnect.http.pool-acquire-timeout:1s}")
+    private Duration poolAcquireTimeout;
+
+    @Value("${proconnect.http.pool.max-per-route:50}")
+    private int maxPerRoute;
+
+    @Value("${proconnect.http.pool.max-total:100}")
+    private int maxTotal;
+
+    @Value("${proconnect.http.pool.idle-timeout:60s}")
+    private Duration idleTimeout;
+
+    @Value("${proconnect.http.http2:false}")
+    private boolean http2;
+
+    @Bean
+    public ClientHttpRequestFactory proConnectRequestFactory() {
+        if (http2) {
+            log.info("Client HTTP ProConnect : JDK HttpClient (HTTP/2)");
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(connectTimeout)
+                    .build();
+            JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+            factory.setReadTimeout(readTimeout);
+            return factory;
+        }
+
+        log.info("Client HTTP ProConnect : Apache HttpClient (pool {} par route, {} au total)", maxPerRoute, maxTotal);
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(maxPerRoute)
+                .setMaxConnTotal(maxTotal)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .build())
+                .build();
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(poolAcquireTimeout))
+                        .setResponseTimeout(Timeout.of(readTimeout))
+                        .build())
+                .evictIdleConnections(TimeValue.of(idleTimeout))
+                .evictExpiredConnections()
+                .build();
+
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    /**
+     * Client non bloquant utilisé par la variante asynchrone du callback.
+     */
+    @Bean
+    public HttpClient proConnectAsyncHttpClient() {
+        return HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    @Bean
+    public RestTemplate proConnectRestTemplate(ClientHttpRequestFactory proConnectRequestFactory) {
+        return new RestTemplate(proConnectRequestFactory);
+    }
+}
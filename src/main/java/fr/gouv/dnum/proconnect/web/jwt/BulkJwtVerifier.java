@@ -0,0 +1,208 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Vérification en parallèle d'un lot de JWT (traitements de masse : contrôle d'archives
+ * d'id_token ou de réponses userinfo).
+ * <p>
+ * Les en-têtes sont lus en parallèle, puis le vérificateur de chaque couple (kid, algorithme)
+ * distinct est résolu une seule fois (JWKS en cache, re-téléchargement éventuel limité à un par kid
+ * inconnu). Les
+ * signatures sont ensuite vérifiées sur un {@link ForkJoinPool} dédié, de {@code parallelism}
+ * threads. Un jeton invalide n'interrompt pas le lot : chaque jeton reçoit son propre
+ * {@link JwtVerification}, dans l'ordre du lot.
+ * <p>
+ * Les jetons archivés étant expirés, {@code exp} et {@code nbf} peuvent être contrôlés à un instant
+ * de référence, ou ignorés pour ne vérifier que les signatures.
+ */
+@Slf4j
+public final class BulkJwtVerifier implements AutoCloseable {
+
+    private static final Timer BATCH = Timer.builder("proconnect.jwt.bulk")
+            .description("Vérification d'un lot de JWT")
+            .register(Metrics.globalRegistry);
+    private static final Counter VALID = verifiedTokens("valid");
+    private static final Counter INVALID = verifiedTokens("invalid");
+
+    // vérificateur du kid, ou erreur de résolution partagée par tous les jetons de ce kid
+    private record ResolvedKey(JwtVerifier verifier, Exception error) {
+    }
+
+    // en-têtes équivalents pour la résolution du vérificateur
+    private record KeyId(String kid, String alg, boolean critical) {
+        KeyId(JwtHeader header) {
+            this(header.kid(), header.alg(), header.crit() != null);
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    public BulkJwtVerifier(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Vérificateur utilisant tous les cœurs disponibles.
+     */
+    public static BulkJwtVerifier withAvailableProcessors() {
+        return new BulkJwtVerifier(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Vérifier la signature de chaque jeton du lot, avec l'algorithme annoncé par son en-tête.
+     *
+     * @return un résultat par jeton, dans l'ordre de {@code tokens}
+     */
+    public List<JwtVerification> verifyAll(Collection<String> tokens) {
+        return verifyAll(tokens, null);
+    }
+
+    /**
+     * Vérifier la signature de chaque jeton du lot, {@code exp} et {@code nbf} étant contrôlés à l'instant présent.
+     *
+     * @param algorithm algorithme imposé, {@code null} pour accepter tout algorithme autorisé
+     * @return un résultat par jeton, dans l'ordre de {@code tokens}
+     */
+    public List<JwtVerification> verifyAll(Collection<String> tokens, JwtAlgorithmEnum algorithm) {
+        return verifyAll(tokens, algorithm, Instant.now());
+    }
+
+    /**
+     * Vérifier la signature de chaque jeton du lot, sans contrôle de {@code exp} ni de {@code nbf}.
+     *
+     * @param algorithm algorithme imposé, {@code null} pour accepter tout algorithme autorisé
+     * @return un résultat par jeton, dans l'ordre de {@code tokens}
+     */
+    public List<JwtVerification> verifySignatures(Collection<String> tokens, JwtAlgorithmEnum algorithm) {
+        return verifyAll(tokens, algorithm, null);
+    }
+
+    /**
+     * Vérifier la signature de chaque jeton du lot.
+     *
+     * @param algorithm algorithme imposé, {@code null} pour accepter tout algorithme autorisé
+     * @param validAt   instant auquel {@code exp} et {@code nbf} sont contrôlés, {@code null} pour ne pas les contrôler
+     * @return un résultat par jeton, dans l'ordre de {@code tokens}
+     */
+    public List<JwtVerification> verifyAll(Collection<String> tokens, JwtAlgorithmEnum algorithm, Instant validAt) {
+        List<String> batch = new ArrayList<>(tokens);
+        return BATCH.record(() -> {
+            JwtHeader[] headers = new JwtHeader[batch.size()];
+            Exception[] headerErrors = new Exception[batch.size()];
+            run(() -> IntStream.range(0, batch.size()).parallel().forEach(i -> {
+                try {
+                    headers[i] = JwtHeader.parse(batch.get(i));
+                } catch (RuntimeException e) {
+                    headerErrors[i] = e;
+                }
+            }));
+
+            Map<KeyId, ResolvedKey> verifiers = resolveVerifiers(headers, algorithm != null ? EnumSet.of(algorithm) : null);
+
+            List<JwtVerification> results = run(() -> IntStream.range(0, batch.size()).parallel()
+                    .mapToObj(i -> verify(i, batch.get(i), headers[i], headerErrors[i], verifiers, validAt))
+                    .toList());
+            long valid = results.stream().filter(JwtVerification::isValid).count();
+            VALID.increment(valid);
+            INVALID.increment(results.size() - valid);
+            log.debug("Lot de {} JWT vérifié : {} valide(s), {} kid(s)", results.size(), valid, verifiers.size());
+            return results;
+        });
+    }
+
+    /**
+     * Résoudre une seule fois le vérificateur (ou l'erreur) de chaque couple (kid, algorithme) distinct du lot.
+     */
+    private static Map<KeyId, ResolvedKey> resolveVerifiers(JwtHeader[] headers, Set<JwtAlgorithmEnum> allowed) {
+        Map<KeyId, ResolvedKey> verifiers = new HashMap<>();
+        for (JwtHeader header : headers) {
+            if (header == null || header.kid() == null) {
+                continue;
+            }
+            KeyId keyId = new KeyId(header);
+            if (verifiers.containsKey(keyId)) {
+                continue;
+            }
+            try {
+                JwtVerifier verifier = JwtUtils.getVerifier(header.kid(), JwtUtils.algorithmOf(header, allowed));
+                verifiers.put(keyId, new ResolvedKey(verifier, null));
+            } catch (Exception e) {
+                verifiers.put(keyId, new ResolvedKey(null, e));
+            }
+        }
+        return verifiers;
+    }
+
+    private static JwtVerification verify(int index, String token, JwtHeader header, Exception headerError,
+                                          Map<KeyId, ResolvedKey> verifiers, Instant validAt) {
+        if (headerError != null) {
+            return new JwtVerification(index, null, null, headerError);
+        }
+        String kid = header.kid();
+        if (kid == null) {
+            return new JwtVerification(index, null, null, new IllegalArgumentException("kid absent de l'en-tête JWT"));
+        }
+        ResolvedKey resolved = verifiers.get(new KeyId(header));
+        if (resolved.error() != null) {
+            return new JwtVerification(index, kid, null, resolved.error());
+        }
+        try {
+            JwtVerifier verifier = resolved.verifier();
+            Claims claims = validAt != null ? verifier.verify(token, validAt) : verifier.verifySignature(token);
+            return new JwtVerification(index, kid, claims, null);
+        } catch (RuntimeException e) {
+            return new JwtVerification(index, kid, null, e);
+        }
+    }
+
+    /**
+     * Exécuter un traitement parallèle dans le pool dédié plutôt que dans le pool commun.
+     */
+    private <T> T run(Callable<T> task) {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Vérification du lot interrompue", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Échec de la vérification du lot", e.getCause());
+        }
+    }
+
+    private void run(Runnable task) {
+        run(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private static Counter verifiedTokens(String result) {
+        return Counter.builder("proconnect.jwt.bulk.tokens")
+                .description("Jetons vérifiés par lot")
+                .tag("result", result)
+                .register(Metrics.globalRegistry);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,78 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import fr.gouv.dnum.proconnect.Constants;
+import fr.gouv.dnum.proconnect.web.replay.ReplayCache;
+import io.jsonwebtoken.Claims;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+
+/**
+ * Contrôles des claims d'un id_token ProConnect (iss, aud, exp, nonce, rejeu), partagés par les
+ * différentes variantes du callback et par la validation des jetons Bearer.
+ */
+public final class IdTokenValidator {
+
+    // Tolérance sur l'expiration (décalage d'horloge)
+    private static final long EXPIRATION_LEEWAY_MILLIS = 120000;
+
+    private IdTokenValidator() {}
+
+    /**
+     * Vérifier les claims d'un id_token déjà validé cryptographiquement.
+     *
+     * @param expectedNonce  nonce stocké lors de la génération du lien de connexion
+     * @param expectedIssuer issuer attendu (préfixe), issu de la découverte OIDC
+     * @throws SecurityException si l'un des contrôles échoue
+     */
+    public static void validate(Claims claims, String expectedNonce, String expectedIssuer) {
+        validate(claims, expectedIssuer);
+
+        String nonce = claims.get("nonce", String.class);
+        if (!Objects.equals(nonce, expectedNonce))
+            throw new SecurityException("bad nonce");
+    }
+
+    /**
+     * Vérifier iss, aud et exp d'un JWT ProConnect sans nonce (jeton Bearer d'un appel d'API).
+     *
+     * @param expectedIssuer issuer attendu (préfixe), issu de la découverte OIDC
+     * @throws SecurityException si l'un des contrôles échoue
+     */
+    public static void validate(Claims claims, String expectedIssuer) {
+        String issuer = claims.getIssuer();
+        LinkedHashSet<String> aud = claims.get("aud", LinkedHashSet.class);
+        Date exp = claims.getExpiration();
+
+        if (issuer == null || !issuer.startsWith(expectedIssuer))
+            throw new SecurityException("bad iss");
+
+        if (aud == null || !aud.contains(Constants.ProConnect.CLIENT_ID))
+            throw new SecurityException("bad aud");
+
+        if (exp == null || exp.before(new Date(System.currentTimeMillis() - EXPIRATION_LEEWAY_MILLIS)))
+            throw new SecurityException("expired");
+    }
+
+    /**
+     * Enregistrer le nonce et, s'il est présent, le jti d'un id_token validé : un même id_token ne
+     * peut aboutir qu'à une seule connexion, y compris sur une autre instance si le
+     * {@link ReplayCache} est partagé. Les valeurs sont conservées jusqu'à l'expiration du jeton,
+     * tolérance comprise.
+     *
+     * @throws SecurityException si le nonce ou le jti a déjà été utilisé
+     */
+    public static void checkReplay(Claims claims, ReplayCache replayCache) {
+        Instant forgetAfter = claims.getExpiration().toInstant().plusMillis(EXPIRATION_LEEWAY_MILLIS);
+
+        String nonce = claims.get("nonce", String.class);
+        if (nonce != null && !replayCache.markUsed(ReplayCache.Kind.NONCE, nonce, forgetAfter))
+            throw new SecurityException("token replayed");
+
+        String jti = claims.getId();
+        if (jti != null && !replayCache.markUsed(ReplayCache.Kind.JTI, jti, forgetAfter))
+            throw new SecurityException("token replayed");
+    }
+}
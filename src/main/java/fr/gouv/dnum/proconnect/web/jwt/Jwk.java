@@ -0,0 +1,28 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+/**
+ * Clé publique d'un JWKS, typée selon son {@code kty}. Les paramètres restent encodés en
+ * base64url tels que publiés ; l'égalité par valeur permet de détecter une clé inchangée
+ * entre deux rafraîchissements.
+ */
+public sealed interface Jwk permits Jwk.Ec, Jwk.Rsa, Jwk.Okp {
+
+    String kid();
+
+    /**
+     * Algorithme annoncé par la clé ({@code alg}), éventuellement {@code null}.
+     */
+    String alg();
+
+    record Ec(String kid, String alg, String crv, String x, String y) implements Jwk {
+    }
+
+    record Rsa(String kid, String alg, String n, String e) implements Jwk {
+    }
+
+    /**
+     * Clé d'une courbe d'Edwards ({@code kty=OKP}, {@code crv=Ed25519} ou {@code Ed448}), pour EdDSA.
+     */
+    record Okp(String kid, String alg, String crv, String x) implements Jwk {
+    }
+}
@@ -0,0 +1,56 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import fr.gouv.dnum.proconnect.web.resilience.EndpointGuard;
+import fr.gouv.dnum.proconnect.web.resilience.OutboundGuards;
+import fr.gouv.dnum.proconnect.web.resilience.ProConnectEndpoint;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Configuration du cache JWKS utilisé par {@link JwtUtils}.
+ */
+@Configuration
+public class JwksConfig {
+
+    @Bean
+    public JwksKeyStore jwksKeyStore(RestTemplate proConnectRestTemplate,
+                                     OidcMetadataProvider oidcMetadataProvider,
+                                     OutboundGuards outboundGuards,
+                                     @Value("${proconnect.jwks.ttl:10m}") Duration ttl,
+                                     @Value("${proconnect.jwks.refresh-ahead:1m}") Duration refreshAhead,
+                                     @Value("${proconnect.jwks.min-forced-refresh-interval:30s}") Duration minForcedRefreshInterval,
+                                     @Value("${proconnect.jwks.failure-backoff:5s}") Duration failureBackoff) {
+        JwksKeyStore store = new JwksKeyStore(
+                () -> URI.create(oidcMetadataProvider.current().jwksUri()),
+                uri -> fetch(proConnectRestTemplate, outboundGuards.get(ProConnectEndpoint.JWKS), uri),
+                ttl, refreshAhead, minForcedRefreshInterval, failureBackoff, Clock.systemUTC());
+        JwtUtils.setKeyStore(store);
+        return store;
+    }
+
+    /**
+     * Télécharger le JWKS via le client HTTP partagé. Un échec (délai dépassé, disjoncteur ouvert)
+     * laisse {@link JwksKeyStore} servir les clés déjà connues.
+     */
+    private static ByteArrayInputStream fetch(RestTemplate restTemplate, EndpointGuard guard, URI uri) throws IOException {
+        try {
+            byte[] body = guard.call(() -> restTemplate.getForObject(uri, byte[].class));
+            if (body == null) {
+                throw new IOException("JWKS vide : " + uri);
+            }
+            return new ByteArrayInputStream(body);
+        } catch (RestClientException e) {
+            throw new IOException("Échec du téléchargement du JWKS : " + uri, e);
+        }
+    }
+}
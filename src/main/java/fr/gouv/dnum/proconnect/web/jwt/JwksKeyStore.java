@@ -0,0 +1,355 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Magasin en mémoire des clés publiques du JWKS ProConnect, indexées par kid.
+ * <p>
+ * Le JWKS est téléchargé une seule fois puis conservé pendant {@code ttl}. Un rafraîchissement
+ * est planifié en tâche de fond {@code refreshAhead} avant l'expiration, de sorte que le chemin
+ * de vérification ne fasse normalement aucun appel réseau. Un kid inconnu déclenche un
+ * re-téléchargement forcé, limité à un par {@code minForcedRefreshInterval}.
+ * <p>
+ * Les téléchargements sont mutualisés : pendant une rotation de clé, tous les appelants qui
+ * manquent le nouveau kid attendent le même téléchargement. Pendant ce temps, les kids déjà
+ * connus restent servis par le jeu de clés précédent. Un échec est mémorisé pendant
+ * {@code failureBackoff} : aucun nouveau téléchargement n'est tenté dans cet intervalle.
+ * <p>
+ * {@link #getKeyAsync} sert les appelants qui ne doivent pas bloquer (callback asynchrone) : une
+ * clé connue et à jour est retournée immédiatement, sinon la recherche s'exécute dans un thread virtuel.
+ */
+@Slf4j
+public class JwksKeyStore implements AutoCloseable {
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+    public static final Duration DEFAULT_REFRESH_AHEAD = Duration.ofMinutes(1);
+    public static final Duration DEFAULT_MIN_FORCED_REFRESH_INTERVAL = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_FAILURE_BACKOFF = Duration.ofSeconds(5);
+
+    /**
+     * Source du document JWKS (par défaut {@link java.net.URL#openStream()}).
+     */
+    @FunctionalInterface
+    public interface JwksFetcher {
+        InputStream fetch(URI uri) throws IOException;
+    }
+
+    private enum RefreshTrigger {
+        EXPIRED, UNKNOWN_KID, SCHEDULED
+    }
+
+    private record Snapshot(Map<String, Jwk> keys, Instant fetchedAt, Instant expiresAt) {
+    }
+
+    private record Failure(Instant retryAfter, Exception error) {
+    }
+
+    private static final Counter COALESCED = avoidedFetches("coalesced");
+    private static final Counter BACKOFF = avoidedFetches("backoff");
+    private static final Counter STALE = avoidedFetches("stale");
+
+    private final Supplier<URI> jwksUri;
+    private final JwksFetcher fetcher;
+    private final Duration ttl;
+    private final Duration refreshAhead;
+    private final Duration minForcedRefreshInterval;
+    private final Duration failureBackoff;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+    // recherches de getKeyAsync nécessitant un téléchargement
+    private final ExecutorService asyncLookups = Executors.newVirtualThreadPerTaskExecutor();
+
+    // téléchargement en cours, partagé par tous les appelants
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight = new AtomicReference<>();
+    private volatile Snapshot snapshot;
+    private volatile Failure lastFailure;
+    private volatile Instant lastForcedRefresh = Instant.EPOCH;
+    private ScheduledFuture<?> scheduledRefresh;
+
+    public JwksKeyStore(Supplier<URI> jwksUri) {
+        this(jwksUri, uri -> uri.toURL().openStream(),
+                DEFAULT_TTL, DEFAULT_REFRESH_AHEAD, DEFAULT_MIN_FORCED_REFRESH_INTERVAL, Clock.systemUTC());
+    }
+
+    public JwksKeyStore(Supplier<URI> jwksUri, JwksFetcher fetcher, Duration ttl, Duration refreshAhead,
+                        Duration minForcedRefreshInterval, Clock clock) {
+        this(jwksUri, fetcher, ttl, refreshAhead, minForcedRefreshInterval, DEFAULT_FAILURE_BACKOFF, clock);
+    }
+
+    public JwksKeyStore(Supplier<URI> jwksUri, JwksFetcher fetcher, Duration ttl, Duration refreshAhead,
+                        Duration minForcedRefreshInterval, Duration failureBackoff, Clock clock) {
+        if (refreshAhead.compareTo(ttl) >= 0) {
+            throw new IllegalArgumentException("refreshAhead doit être inférieur au ttl");
+        }
+        this.jwksUri = jwksUri;
+        this.fetcher = fetcher;
+        this.ttl = ttl;
+        this.refreshAhead = refreshAhead;
+        this.minForcedRefreshInterval = minForcedRefreshInterval;
+        this.failureBackoff = failureBackoff;
+        this.clock = clock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jwks-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Retourner la JWK correspondant au kid.
+     *
+     * @throws IllegalArgumentException si le kid reste inconnu après un éventuel re-téléchargement
+     */
+    public Jwk getKey(String kid) throws IOException {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = await(fetchShared(RefreshTrigger.EXPIRED));
+        } else if (isExpired(current)) {
+            current = refreshExpired(current, kid);
+        }
+
+        Jwk key = current.keys().get(kid);
+        if (key == null) {
+            current = forceRefresh(current);
+            key = current.keys().get(kid);
+        }
+
+        if (key == null) {
+            throw new IllegalArgumentException("Clé non trouvée pour kid : " + kid);
+        }
+        return key;
+    }
+
+    /**
+     * Variante non bloquante de {@link #getKey} : le future est déjà terminé si la clé est connue
+     * et le JWKS à jour, sinon il se termine dans un thread virtuel à la fin du téléchargement.
+     */
+    public CompletableFuture<Jwk> getKeyAsync(String kid) {
+        Snapshot current = snapshot;
+        if (current != null && !isExpired(current)) {
+            Jwk key = current.keys().get(kid);
+            if (key != null) {
+                return CompletableFuture.completedFuture(key);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getKey(kid);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, asyncLookups);
+    }
+
+    private boolean isExpired(Snapshot current) {
+        return !clock.instant().isBefore(current.expiresAt());
+    }
+
+    /**
+     * Rafraîchir un JWKS expiré. Un kid déjà connu reste servi par l'ancien jeu de clés si un
+     * téléchargement est déjà en cours, en échec récent, ou vient d'échouer.
+     */
+    private Snapshot refreshExpired(Snapshot seen, String kid) throws IOException {
+        Snapshot latest = snapshot;
+        if (latest != seen && !isExpired(latest)) {
+            // un autre thread vient de rafraîchir
+            return latest;
+        }
+        boolean known = seen.keys().containsKey(kid);
+        if (known && (inFlight.get() != null || inBackoff())) {
+            STALE.increment();
+            return seen;
+        }
+        try {
+            return await(fetchShared(RefreshTrigger.EXPIRED));
+        } catch (IOException e) {
+            if (!known) {
+                throw e;
+            }
+            log.warn("JWKS expiré et rafraîchissement en échec, utilisation des clés précédentes : {}", e.getMessage());
+            STALE.increment();
+            return seen;
+        }
+    }
+
+    /**
+     * Re-télécharger le JWKS suite à un kid inconnu, au plus une fois par intervalle.
+     */
+    private Snapshot forceRefresh(Snapshot seen) throws IOException {
+        Snapshot latest = snapshot;
+        if (latest != seen) {
+            // un autre thread vient de rafraîchir
+            return latest;
+        }
+        CompletableFuture<Snapshot> running = inFlight.get();
+        if (running != null) {
+            COALESCED.increment();
+            return await(running);
+        }
+        Instant now = clock.instant();
+        if (now.isBefore(lastForcedRefresh.plus(minForcedRefreshInterval))) {
+            log.debug("Re-téléchargement JWKS ignoré (limite de fréquence)");
+            return latest;
+        }
+        lastForcedRefresh = now;
+        return await(fetchShared(RefreshTrigger.UNKNOWN_KID));
+    }
+
+    /**
+     * Rejoindre le téléchargement en cours, ou en lancer un dans le thread appelant.
+     * Pendant {@code failureBackoff} après un échec, l'échec est retourné sans nouvel appel.
+     */
+    private CompletableFuture<Snapshot> fetchShared(RefreshTrigger trigger) {
+        while (true) {
+            CompletableFuture<Snapshot> running = inFlight.get();
+            if (running != null) {
+                COALESCED.increment();
+                return running;
+            }
+            Failure failure = lastFailure;
+            if (failure != null && clock.instant().isBefore(failure.retryAfter())) {
+                BACKOFF.increment();
+                return CompletableFuture.failedFuture(new IOException(
+                        "JWKS indisponible (échec récent : " + failure.error().getMessage() + ")", failure.error()));
+            }
+            CompletableFuture<Snapshot> mine = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, mine)) {
+                try {
+                    mine.complete(load(trigger));
+                    lastFailure = null;
+                } catch (IOException | RuntimeException e) {
+                    lastFailure = new Failure(clock.instant().plus(failureBackoff), e);
+                    mine.completeExceptionally(e);
+                } finally {
+                    inFlight.set(null);
+                }
+                return mine;
+            }
+        }
+    }
+
+    private boolean inBackoff() {
+        Failure failure = lastFailure;
+        return failure != null && clock.instant().isBefore(failure.retryAfter());
+    }
+
+    private static Snapshot await(CompletableFuture<Snapshot> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Télécharger et indexer le JWKS, puis planifier le prochain rafraîchissement.
+     * N'est appelé que par le thread propriétaire du téléchargement en cours ({@link #inFlight}).
+     */
+    private Snapshot load(RefreshTrigger trigger) throws IOException {
+        URI uri = jwksUri.get();
+        Map<String, Jwk> parsed;
+        Timer.Sample sample = Timer.start(Metrics.globalRegistry);
+        String outcome = "failure";
+        try (InputStream is = fetcher.fetch(uri)) {
+            parsed = JwksParser.parse(is);
+            outcome = "success";
+        } finally {
+            sample.stop(Timer.builder("proconnect.jwks.fetch")
+                    .description("Téléchargement et analyse du JWKS")
+                    .tag("trigger", trigger.name().toLowerCase(Locale.ROOT))
+                    .tag("outcome", outcome)
+                    .register(Metrics.globalRegistry));
+        }
+
+        Snapshot previous = snapshot;
+        Map<String, Jwk> keys = retainUnchanged(parsed, previous != null ? previous.keys() : Map.of());
+
+        Instant now = clock.instant();
+        Snapshot loaded = new Snapshot(keys, now, now.plus(ttl));
+        snapshot = loaded;
+        log.info("JWKS chargé depuis {} : {} clé(s)", uri, keys.size());
+
+        scheduleRefreshAhead();
+        return loaded;
+    }
+
+    /**
+     * Conserver l'instance précédente d'une clé inchangée, afin de ne pas invalider
+     * les vérificateurs déjà construits pour ce kid.
+     */
+    private static Map<String, Jwk> retainUnchanged(Map<String, Jwk> parsed, Map<String, Jwk> previous) {
+        if (previous.isEmpty()) {
+            return parsed;
+        }
+        Map<String, Jwk> keys = new HashMap<>(parsed);
+        keys.replaceAll((kid, key) -> key.equals(previous.get(kid)) ? previous.get(kid) : key);
+        return Map.copyOf(keys);
+    }
+
+    private void scheduleRefreshAhead() {
+        scheduleRefresh(ttl.minus(refreshAhead));
+    }
+
+    /**
+     * Planifier le prochain rafraîchissement en arrière-plan. Un rafraîchissement en échec est
+     * retenté après {@code failureBackoff}, sans quoi la chaîne s'arrêterait au premier échec.
+     */
+    private synchronized void scheduleRefresh(Duration delay) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        scheduledRefresh = scheduler.schedule(() -> {
+            try {
+                await(fetchShared(RefreshTrigger.SCHEDULED));
+            } catch (Exception e) {
+                log.warn("Échec du rafraîchissement anticipé du JWKS, nouvel essai dans {} : {}", failureBackoff, e.getMessage());
+                scheduleRefresh(failureBackoff);
+            }
+        }, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static Counter avoidedFetches(String reason) {
+        return Counter.builder("proconnect.jwks.fetch.avoided")
+                .description("Téléchargements du JWKS évités")
+                .tag("reason", reason)
+                .register(Metrics.globalRegistry);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        asyncLookups.shutdownNow();
+    }
+}
@@ -0,0 +1,95 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Analyse en flux d'un document JWKS : une seule passe sur l'entrée, sans arbre intermédiaire,
+ * pour construire la table kid → {@link Jwk}. L'ordre des champs et les espaces sont indifférents ;
+ * les champs inconnus et les types de clé non supportés sont ignorés.
+ */
+@Slf4j
+public final class JwksParser {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private JwksParser() {}
+
+    /**
+     * @return table immuable des clés indexées par kid
+     */
+    public static Map<String, Jwk> parse(InputStream in) throws IOException {
+        Map<String, Jwk> keys = new HashMap<>();
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("JWKS invalide : objet JSON attendu");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("keys".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Jwk jwk = readKey(parser);
+                        if (jwk != null) {
+                            keys.putIfAbsent(jwk.kid(), jwk);
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return Map.copyOf(keys);
+    }
+
+    /**
+     * Lire un objet clé, le parser étant positionné sur son {@code START_OBJECT}.
+     */
+    private static Jwk readKey(JsonParser parser) throws IOException {
+        String kty = null, kid = null, alg = null, crv = null, x = null, y = null, n = null, e = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value != JsonToken.VALUE_STRING) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "kty" -> kty = parser.getText();
+                case "kid" -> kid = parser.getText();
+                case "alg" -> alg = parser.getText();
+                case "crv" -> crv = parser.getText();
+                case "x" -> x = parser.getText();
+                case "y" -> y = parser.getText();
+                case "n" -> n = parser.getText();
+                case "e" -> e = parser.getText();
+                default -> {
+                    // champ non utilisé (use, key_ops, x5c...)
+                }
+            }
+        }
+
+        if (kid == null || kty == null) {
+            return null;
+        }
+        if ("EC".equalsIgnoreCase(kty) && crv != null && x != null && y != null) {
+            return new Jwk.Ec(kid, alg, crv, x, y);
+        }
+        if ("RSA".equalsIgnoreCase(kty) && n != null && e != null) {
+            return new Jwk.Rsa(kid, alg, n, e);
+        }
+        if ("OKP".equalsIgnoreCase(kty) && crv != null && x != null) {
+            return new Jwk.Okp(kid, alg, crv, x);
+        }
+        log.debug("Clé JWKS ignorée (kid={}, kty={})", kid, kty);
+        return null;
+    }
+}
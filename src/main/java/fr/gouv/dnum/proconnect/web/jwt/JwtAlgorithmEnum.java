@@ -1,17 +1,89 @@
 package fr.gouv.dnum.proconnect.web.jwt;
 
+import io.jsonwebtoken.UnsupportedJwtException;
+
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Algorithmes de signature JWS acceptés : toute autre valeur de l'en-tête {@code alg}
+ * ({@code none}, HMAC...) est refusée.
+ */
 public enum JwtAlgorithmEnum {
 
-    RS256("RSA"), ES256("EC");
+    RS256("RSA", "SHA256withRSA", null),
+    PS256("RSA", "RSASSA-PSS", null),
+    ES256("EC", "SHA256withECDSAinP1363Format", "P-256"),
+    ES384("EC", "SHA384withECDSAinP1363Format", "P-384"),
+    ES512("EC", "SHA512withECDSAinP1363Format", "P-521"),
+    EdDSA("OKP", "EdDSA", null);
 
     private String algorithm;
+    // algorithme JCA ; les signatures ECDSA d'un JWS sont au format R || S (P1363)
+    private final String signatureAlgorithm;
+    // courbe imposée pour les clés EC
+    private final String curve;
 
-    JwtAlgorithmEnum(String algo) {
+    JwtAlgorithmEnum(String algo, String signatureAlgorithm, String curve) {
         this.algorithm = algo;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.curve = curve;
     }
 
+    /**
+     * Type de clé ({@code kty}) attendu.
+     */
     public String getAlgorithm() {
         return algorithm;
     }
 
+    public String getCurve() {
+        return curve;
+    }
+
+    /**
+     * Algorithme correspondant à l'en-tête {@code alg} d'un JWT.
+     *
+     * @throws UnsupportedJwtException si l'algorithme n'est pas dans la liste autorisée
+     */
+    public static JwtAlgorithmEnum fromHeader(String alg) {
+        if (alg != null) {
+            for (JwtAlgorithmEnum value : values()) {
+                if (value.name().equals(alg)) {
+                    return value;
+                }
+            }
+        }
+        throw new UnsupportedJwtException("Algorithme JWT non autorisé : " + alg);
+    }
+
+    /**
+     * Algorithmes de la liste autorisée parmi ceux annoncés par le fournisseur (découverte OIDC) ;
+     * les autres noms ({@code none}, HMAC, algorithmes inconnus) sont ignorés.
+     */
+    public static Set<JwtAlgorithmEnum> supportedAmong(Collection<String> names) {
+        Set<JwtAlgorithmEnum> algorithms = EnumSet.noneOf(JwtAlgorithmEnum.class);
+        for (JwtAlgorithmEnum value : values()) {
+            if (names.contains(value.name())) {
+                algorithms.add(value);
+            }
+        }
+        return algorithms;
+    }
+
+    /**
+     * Nouveau moteur de signature, non initialisé.
+     */
+    Signature newSignature() throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(signatureAlgorithm);
+        if (this == PS256) {
+            signature.setParameter(new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1));
+        }
+        return signature;
+    }
 }
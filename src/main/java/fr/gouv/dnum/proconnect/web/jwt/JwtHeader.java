@@ -0,0 +1,118 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * En-tête d'un JWT compact, limité aux champs utiles à la sélection de la clé.
+ * <p>
+ * Le décodage évite les allocations superflues : pas d'expression régulière ni de tableau
+ * de segments, pas de {@code String} intermédiaire ni d'arbre JSON. Le segment base64url est
+ * décodé directement en octets puis lu en flux par un {@link ObjectReader} partagé.
+ *
+ * @param crit extensions critiques ({@code crit}) que le destinataire doit comprendre, {@code null} si absent
+ */
+public record JwtHeader(String kid, String alg, String typ, List<String> crit) {
+
+    public JwtHeader(String kid, String alg, String typ) {
+        this(kid, alg, typ, null);
+    }
+
+    private static final ObjectReader READER = new ObjectMapper().reader();
+
+    private static final byte[] BASE64_URL = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_URL, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_URL[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    /**
+     * Lire l'en-tête d'un JWT compact ({@code header.payload.signature}).
+     *
+     * @throws IllegalArgumentException si le jeton ou son en-tête est mal formé
+     */
+    public static JwtHeader parse(String token) {
+        int end = token.indexOf('.');
+        if (end <= 0) {
+            throw new IllegalArgumentException("JWT invalide : en-tête introuvable");
+        }
+
+        byte[] json = decodeBase64Url(token, end);
+
+        String kid = null, alg = null, typ = null;
+        List<String> crit = null;
+        try (JsonParser parser = READER.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("JWT invalide : en-tête non JSON");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("crit".equals(field) && value == JsonToken.START_ARRAY) {
+                    crit = new ArrayList<>();
+                    for (JsonToken item = parser.nextToken(); item != JsonToken.END_ARRAY; item = parser.nextToken()) {
+                        if (item == null) {
+                            throw new IllegalArgumentException("JWT invalide : en-tête tronqué");
+                        }
+                        parser.skipChildren();
+                        crit.add(parser.getText());
+                    }
+                    continue;
+                }
+                if (value != JsonToken.VALUE_STRING) {
+                    parser.skipChildren();
+                    continue;
+                }
+                switch (field) {
+                    case "kid" -> kid = parser.getText();
+                    case "alg" -> alg = parser.getText();
+                    case "typ" -> typ = parser.getText();
+                    default -> {
+                        // champ non utilisé
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JWT invalide : en-tête illisible", e);
+        }
+        return new JwtHeader(kid, alg, typ, crit);
+    }
+
+    /**
+     * Décoder les {@code length} premiers caractères base64url (sans remplissage) de {@code s}.
+     */
+    private static byte[] decodeBase64Url(String s, int length) {
+        if (length % 4 == 1) {
+            throw new IllegalArgumentException("JWT invalide : base64url mal formé");
+        }
+        byte[] out = new byte[length * 3 / 4];
+        int bits = 0;
+        int buffer = 0;
+        int position = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            int value = c < 128 ? BASE64_URL[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("JWT invalide : base64url mal formé");
+            }
+            buffer = (buffer << 6) | value;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                out[position++] = (byte) (buffer >> bits);
+            }
+        }
+        return out;
+    }
+}
@@ -1,26 +1,47 @@
 package fr.gouv.dnum.proconnect.web.jwt;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.gouv.dnum.proconnect.Constants;
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.bouncycastle.jce.ECNamedCurveTable;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
 
-import java.io.IOException;
 import java.math.BigInteger;
 import java.net.URI;
-import java.net.URL;
+import java.security.AlgorithmParameters;
 import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.Security;
+import java.security.spec.X509EncodedKeySpec;
+import java.security.spec.ECGenParameterSpec;
 import java.security.spec.ECParameterSpec;
 import java.security.spec.ECPoint;
 import java.security.spec.ECPublicKeySpec;
 import java.security.spec.RSAPublicKeySpec;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
+/**
+ * Vérification des JWT signés par ProConnect, avec les clés du JWKS mis en cache.
+ * <p>
+ * L'algorithme est celui de l'en-tête {@code alg}, limité à la liste de {@link JwtAlgorithmEnum} :
+ * des clés de types différents peuvent coexister dans le JWKS (migration d'algorithme côté
+ * ProConnect) sans redéploiement. Un vérificateur est construit une fois par couple (kid, algorithme).
+ */
 public final class JwtUtils {
 
     private JwtUtils() {}
@@ -30,53 +51,111 @@ public final class JwtUtils {
         Security.addProvider(new BouncyCastleProvider());
     }
 
-    /**
-     * Récupérer la clé publique à partir du JWKS (clé JSON Web Key Set) sans Jackson.
-     */
-    public static PublicKey getPublicKeyFromJwks(String kid, JwtAlgorithmEnum algorithm) throws Exception {
-        String keyJson = getJSONKey(kid);
+    private record VerifierKey(String kid, JwtAlgorithmEnum algorithm) {
+    }
 
-        // Récupérer les paramètres adaptés
-        String keyType = extractJsonValue(keyJson, "kty");
-        if ("RSA".equalsIgnoreCase(keyType) && algorithm == JwtAlgorithmEnum.RS256) {
-            String n = extractJsonValue(keyJson, "n");
-            String e = extractJsonValue(keyJson, "e");
+    // Vérificateurs déjà construits, par (kid, algorithme)
+    private static final ConcurrentMap<VerifierKey, JwtVerifier> VERIFIERS = new ConcurrentHashMap<>();
 
-            return buildRsaPublicKey(
-                    Base64.getUrlDecoder().decode(n),
-                    Base64.getUrlDecoder().decode(e)
-            );
-        } else if ("EC".equalsIgnoreCase(keyType) && algorithm == JwtAlgorithmEnum.ES256) {
-            String crv = extractJsonValue(keyJson, "crv");
-            String x = extractJsonValue(keyJson, "x");
-            String y = extractJsonValue(keyJson, "y");
+    // Paramètres de courbe calculés une seule fois par courbe
+    private static final ConcurrentMap<String, ECParameterSpec> CURVES = new ConcurrentHashMap<>();
 
-            return buildEcPublicKey(
-                    crv,
-                    Base64.getUrlDecoder().decode(x),
-                    Base64.getUrlDecoder().decode(y)
-            );
-        }
+    // Correspondance entre les noms de courbe JWK et les noms standards du JDK
+    private static final Map<String, String> JDK_CURVE_NAMES = Map.of(
+            "P-256", "secp256r1",
+            "P-384", "secp384r1",
+            "P-521", "secp521r1"
+    );
 
-        throw new IllegalArgumentException("Type de clé non supporté ou incompatibilité avec l'algorithme.");
+    // Préfixes DER (SubjectPublicKeyInfo) des clés EdDSA, suivis de la clé brute
+    private static final Map<String, byte[]> OKP_KEY_PREFIXES = Map.of(
+            "Ed25519", HexFormat.of().parseHex("302a300506032b6570032100"),
+            "Ed448", HexFormat.of().parseHex("3043300506032b6571033a00")
+    );
+
+    // Métriques enregistrées dans le registre global Micrometer (JwtUtils est statique)
+    private static final Counter VERIFIER_CACHE_HIT = Counter.builder("proconnect.jwt.verifier.cache")
+            .tag("result", "hit").register(Metrics.globalRegistry);
+    private static final Counter VERIFIER_CACHE_MISS = Counter.builder("proconnect.jwt.verifier.cache")
+            .tag("result", "miss").register(Metrics.globalRegistry);
+    private static final Timer SIGNATURE_CHECK = Timer.builder("proconnect.jwt.signature")
+            .description("Vérification de signature et lecture des claims d'un JWT")
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry);
+
+    private static volatile JwksKeyStore keyStore =
+            new JwksKeyStore(() -> URI.create(Constants.ProConnect.JWKS_ENDPOINT));
+
+    /**
+     * Remplacer le magasin de clés JWKS utilisé pour la vérification (configuration Spring, tests).
+     */
+    public static void setKeyStore(JwksKeyStore store) {
+        JwksKeyStore previous = keyStore;
+        keyStore = store;
+        VERIFIERS.clear();
+        if (previous != store) {
+            previous.close();
+        }
     }
 
-    private static String getJSONKey(String kid) throws IOException {
-        URL url = URI.create(Constants.ProConnect.JWKS_ENDPOINT).toURL();
+    public static JwksKeyStore getKeyStore() {
+        return keyStore;
+    }
 
-        try (java.io.InputStream is = url.openStream()) {
-            String jwksJson = new String(is.readAllBytes());
+    /**
+     * Récupérer la clé publique à partir du JWKS mis en cache.
+     */
+    public static PublicKey getPublicKeyFromJwks(String kid, JwtAlgorithmEnum algorithm) throws Exception {
+        return getVerifier(kid, algorithm).publicKey();
+    }
 
-            String keyJson = extractJsonForKey(jwksJson, kid);
+    /**
+     * Récupérer le vérificateur associé au kid, en ne le reconstruisant que si la JWK a changé.
+     */
+    static JwtVerifier getVerifier(String kid, JwtAlgorithmEnum algorithm) throws Exception {
+        return getVerifier(kid, keyStore.getKey(kid), algorithm);
+    }
 
-            if (keyJson == null) {
-                throw new IllegalArgumentException("Clé non trouvée pour kid : " + kid);
-            }
+    private static JwtVerifier getVerifier(String kid, Jwk jwk, JwtAlgorithmEnum algorithm) throws Exception {
+        if (jwk.alg() != null && !jwk.alg().equals(algorithm.name())) {
+            // une clé qui annonce son algorithme n'est utilisée qu'avec celui-ci
+            throw new UnsupportedJwtException("La clé " + kid + " est réservée à l'algorithme " + jwk.alg());
+        }
+        VerifierKey verifierKey = new VerifierKey(kid, algorithm);
 
-            return keyJson;
+        JwtVerifier verifier = VERIFIERS.get(verifierKey);
+        if (verifier != null && verifier.jwk() == jwk) {
+            VERIFIER_CACHE_HIT.increment();
+            return verifier;
         }
+        VERIFIER_CACHE_MISS.increment();
+
+        PublicKey publicKey = buildPublicKey(jwk, algorithm);
+        // une clé trop faible ou inadaptée à l'algorithme est refusée ici, avant toute mise en cache
+        verifier = new JwtVerifier(jwk, publicKey, algorithm);
+        VERIFIERS.put(verifierKey, verifier);
+        return verifier;
     }
 
+    private static PublicKey buildPublicKey(Jwk key, JwtAlgorithmEnum algorithm) throws Exception {
+        // Récupérer les paramètres adaptés
+        if (key instanceof Jwk.Rsa rsa && "RSA".equals(algorithm.getAlgorithm())) {
+            return buildRsaPublicKey(
+                    Base64.getUrlDecoder().decode(rsa.n()),
+                    Base64.getUrlDecoder().decode(rsa.e())
+            );
+        } else if (key instanceof Jwk.Ec ec && ec.crv().equals(algorithm.getCurve())) {
+            return buildEcPublicKey(
+                    ec.crv(),
+                    Base64.getUrlDecoder().decode(ec.x()),
+                    Base64.getUrlDecoder().decode(ec.y())
+            );
+        } else if (key instanceof Jwk.Okp okp && algorithm == JwtAlgorithmEnum.EdDSA) {
+            return buildOkpPublicKey(okp.crv(), Base64.getUrlDecoder().decode(okp.x()));
+        }
+
+        throw new IllegalArgumentException("Type de clé non supporté ou incompatibilité avec l'algorithme.");
+    }
 
     /**
      * Construire une clé publique RSA.
@@ -90,10 +169,54 @@ public final class JwtUtils {
         return factory.generatePublic(spec);
     }
 
+    /**
+     * Construire une clé publique EdDSA à partir de sa forme brute ({@code x} de la JWK).
+     */
+    private static PublicKey buildOkpPublicKey(String curveName, byte[] x) throws Exception {
+        byte[] prefix = OKP_KEY_PREFIXES.get(curveName);
+        if (prefix == null) {
+            throw new IllegalArgumentException("Courbe non supportée : " + curveName);
+        }
+        byte[] encoded = Arrays.copyOf(prefix, prefix.length + x.length);
+        System.arraycopy(x, 0, encoded, prefix.length, x.length);
+        return KeyFactory.getInstance("EdDSA").generatePublic(new X509EncodedKeySpec(encoded));
+    }
+
     /**
      * Construire une clé publique EC (courbe elliptique).
+     * Les courbes NIST sont construites avec le fournisseur natif du JDK, les autres via Bouncy Castle.
      */
     public static PublicKey buildEcPublicKey(String curveName, byte[] xBytes, byte[] yBytes) throws Exception {
+        ECParameterSpec ecSpec = CURVES.get(curveName);
+        if (ecSpec == null) {
+            ecSpec = curveParameters(curveName);
+            CURVES.putIfAbsent(curveName, ecSpec);
+        }
+
+        // Créer un point elliptique à partir des coordonnées X et Y
+        ECPoint ecPoint = new ECPoint(
+                new BigInteger(1, xBytes),
+                new BigInteger(1, yBytes)
+        );
+
+        // Construire la spécification de la clé publique
+        ECPublicKeySpec publicKeySpec = new ECPublicKeySpec(ecPoint, ecSpec);
+
+        // Générer la clé publique avec "KeyFactory"
+        KeyFactory keyFactory = JDK_CURVE_NAMES.containsKey(curveName)
+                ? KeyFactory.getInstance("EC")
+                : KeyFactory.getInstance("EC", "BC");
+        return keyFactory.generatePublic(publicKeySpec);
+    }
+
+    private static ECParameterSpec curveParameters(String curveName) throws Exception {
+        String jdkName = JDK_CURVE_NAMES.get(curveName);
+        if (jdkName != null) {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec(jdkName));
+            return parameters.getParameterSpec(ECParameterSpec.class);
+        }
+
         // Récupérer les spécifications de la courbe via Bouncy Castle
         ECNamedCurveParameterSpec bcSpec = ECNamedCurveTable.getParameterSpec(curveName);
         if (bcSpec == null) {
@@ -101,7 +224,7 @@ public final class JwtUtils {
         }
 
         // Convertir la courbe en spécification compatible avec Java
-        ECParameterSpec ecSpec = new ECParameterSpec(
+        return new ECParameterSpec(
                 new java.security.spec.EllipticCurve(
                         new java.security.spec.ECFieldFp(bcSpec.getCurve().getField().getCharacteristic()),
                         bcSpec.getCurve().getA().toBigInteger(),
@@ -114,66 +237,86 @@ public final class JwtUtils {
                 bcSpec.getN(),
                 bcSpec.getH().intValue()
         );
+    }
 
-        // Créer un point elliptique à partir des coordonnées X et Y
-        ECPoint ecPoint = new ECPoint(
-                new BigInteger(1, xBytes),
-                new BigInteger(1, yBytes)
-        );
-
-        // Construire la spécification de la clé publique
-        ECPublicKeySpec publicKeySpec = new ECPublicKeySpec(ecPoint, ecSpec);
-
-        // Générer la clé publique avec "KeyFactory"
-        KeyFactory keyFactory = KeyFactory.getInstance("EC", "BC");
-        return keyFactory.generatePublic(publicKeySpec);
+    /**
+     * Valider et interpréter un JWT avec l'algorithme annoncé par son en-tête.
+     */
+    public static Claims verifyJwt(String jwtToken) throws Exception {
+        return verifyJwt(jwtToken, (Set<JwtAlgorithmEnum>) null);
     }
 
     /**
-     * Valider et interpréter un JWT en fonction de l'algorithme.
+     * Valider et interpréter un JWT en imposant l'algorithme.
+     *
+     * @param algorithm algorithme attendu dans l'en-tête, {@code null} pour accepter tout algorithme autorisé
      */
     public static Claims verifyJwt(String jwtToken, JwtAlgorithmEnum algorithm) throws Exception {
-        String[] jwtParts = jwtToken.split("\\.");
-        String headerJson = new String(Base64.getUrlDecoder().decode(jwtParts[0]));
-        ObjectMapper mapper = new ObjectMapper();
-        String kid = mapper.readTree(headerJson).get("kid").asText();
+        return verifyJwt(jwtToken, algorithm != null ? EnumSet.of(algorithm) : null);
+    }
 
-        PublicKey publicKey = getPublicKeyFromJwks(kid, algorithm);
+    /**
+     * Valider et interpréter un JWT signé avec l'un des algorithmes attendus, par exemple ceux
+     * annoncés par la découverte OIDC ({@code id_token_signing_alg_values_supported}).
+     *
+     * @param allowed algorithmes acceptés, {@code null} pour accepter tout algorithme autorisé
+     */
+    public static Claims verifyJwt(String jwtToken, Set<JwtAlgorithmEnum> allowed) throws Exception {
+        JwtHeader header = JwtHeader.parse(jwtToken);
+        if (header.kid() == null) {
+            throw new IllegalArgumentException("kid absent de l'en-tête JWT");
+        }
 
-        return Jwts.parser()
-                .verifyWith(publicKey)
-                .build()
-                .parseSignedClaims(jwtToken)
-                .getPayload();
+        JwtVerifier verifier = getVerifier(header.kid(), algorithmOf(header, allowed));
+        return SIGNATURE_CHECK.recordCallable(() -> verifier.verify(jwtToken));
     }
 
     /**
-     * Extraire la sous-structure JSON correspondant au kid.
+     * Variante non bloquante de {@link #verifyJwt(String, Set)} : si la clé est connue et le JWKS à jour,
+     * la vérification s'exécute dans le thread appelant ; sinon elle reprend dans {@code executor}
+     * une fois le JWKS téléchargé, sans qu'aucun thread de {@code executor} n'attende le réseau.
      */
-    private static String extractJsonForKey(String jwksJson, String kid) {
-        int index = jwksJson.indexOf("\"kid\":\"" + kid + "\"");
-        if (index == -1) {
-            return null;
+    public static CompletableFuture<Claims> verifyJwtAsync(String jwtToken, Set<JwtAlgorithmEnum> allowed, Executor executor) {
+        JwtHeader header;
+        JwtAlgorithmEnum algorithm;
+        try {
+            header = JwtHeader.parse(jwtToken);
+            if (header.kid() == null) {
+                throw new IllegalArgumentException("kid absent de l'en-tête JWT");
+            }
+            algorithm = algorithmOf(header, allowed);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
 
-        // Chercher la paire d'accolades correspondante
-        int start = jwksJson.lastIndexOf("{", index);
-        int end = jwksJson.indexOf("}", index) + 1;
-        return jwksJson.substring(start, end);
+        CompletableFuture<Jwk> key = keyStore.getKeyAsync(header.kid());
+        Function<Jwk, Claims> verification = jwk -> {
+            try {
+                JwtVerifier verifier = getVerifier(header.kid(), jwk, algorithm);
+                return SIGNATURE_CHECK.recordCallable(() -> verifier.verify(jwtToken));
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        };
+        return key.isDone() ? key.thenApply(verification) : key.thenApplyAsync(verification, executor);
     }
 
     /**
-     * Extraire la valeur d'une clé dans une chaîne JSON très simple.
+     * Algorithme de vérification d'un jeton, d'après son en-tête.
+     *
+     * @param allowed algorithmes acceptés, {@code null} pour accepter tout algorithme autorisé
+     * @throws UnsupportedJwtException si l'algorithme est refusé ou si l'en-tête exige une extension ({@code crit})
      */
-    private static String extractJsonValue(String json, String key) {
-        String searchKey = "\"" + key + "\":\"";
-        int index = json.indexOf(searchKey);
-        if (index == -1) {
-            return null;
+    static JwtAlgorithmEnum algorithmOf(JwtHeader header, Set<JwtAlgorithmEnum> allowed) {
+        JwtAlgorithmEnum algorithm = JwtAlgorithmEnum.fromHeader(header.alg());
+        if (allowed != null && !allowed.contains(algorithm)) {
+            throw new UnsupportedJwtException("Algorithme JWT inattendu : " + header.alg() + " au lieu de " + allowed);
         }
-
-        int valueStart = index + searchKey.length();
-        int valueEnd = json.indexOf("\"", valueStart);
-        return json.substring(valueStart, valueEnd);
+        if (header.crit() != null) {
+            throw new UnsupportedJwtException("Extensions JWT critiques non supportées : " + header.crit());
+        }
+        return algorithm;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,18 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * Résultat de la vérification d'un jeton d'un lot ({@link BulkJwtVerifier}).
+ *
+ * @param index  position du jeton dans le lot
+ * @param kid    kid de l'en-tête, {@code null} si l'en-tête est illisible
+ * @param claims claims du jeton si la signature est valide, sinon {@code null}
+ * @param error  cause du refus, sinon {@code null}
+ */
+public record JwtVerification(int index, String kid, Claims claims, Exception error) {
+
+    public boolean isValid() {
+        return error == null;
+    }
+}
@@ -0,0 +1,213 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.PrematureJwtException;
+import io.jsonwebtoken.security.InvalidKeyException;
+import io.jsonwebtoken.security.SignatureException;
+import io.jsonwebtoken.security.WeakKeyException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Vérificateur prêt à l'emploi pour un couple (kid, algorithme) : la clé publique déjà
+ * construite et des moteurs {@link Signature} déjà initialisés avec cette clé, partagés entre threads.
+ * <p>
+ * Un moteur est emprunté le temps d'une vérification puis rendu : après {@code verify}, il revient
+ * à l'état qui suit {@code initVerify} et sert au jeton suivant sans nouvelle recherche de
+ * fournisseur JCA ni nouvelle initialisation. La réserve ne dépend pas des threads (contrairement
+ * à un {@code ThreadLocal}, inopérant avec les threads virtuels) et conserve au plus
+ * {@link #MAX_IDLE_ENGINES} moteurs inactifs.
+ * <p>
+ * La clé est contrôlée à la construction, comme le fait le parseur jjwt (RFC 7518) : module d'au
+ * moins {@value #MIN_RSA_KEY_BITS} bits pour RS256 et PS256, courbe correspondant à l'algorithme
+ * pour ES256, ES384 et ES512, clé Edwards pour EdDSA.
+ */
+public final class JwtVerifier {
+
+    static final int MIN_RSA_KEY_BITS = 2048;
+
+    private static final int MAX_IDLE_ENGINES = Runtime.getRuntime().availableProcessors() * 2;
+    private static final ObjectReader CLAIMS_READER = new ObjectMapper().readerFor(Map.class);
+
+    private final Jwk jwk;
+    private final PublicKey publicKey;
+    private final JwtAlgorithmEnum algorithm;
+    private final Queue<Signature> idleEngines = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * @param jwk       JWK source, utilisée pour détecter un changement de clé après rafraîchissement du JWKS
+     * @param publicKey clé publique construite à partir de la JWK
+     * @param algorithm algorithme de signature vérifié avec {@code publicKey}
+     * @throws WeakKeyException    si la clé est trop faible pour l'algorithme
+     * @throws InvalidKeyException si la clé ne correspond pas à l'algorithme
+     */
+    public JwtVerifier(Jwk jwk, PublicKey publicKey, JwtAlgorithmEnum algorithm) throws GeneralSecurityException {
+        checkKey(publicKey, algorithm);
+        this.jwk = jwk;
+        this.publicKey = publicKey;
+        this.algorithm = algorithm;
+        // valider dès maintenant la compatibilité de la clé avec l'algorithme
+        release(newEngine());
+    }
+
+    private static void checkKey(PublicKey publicKey, JwtAlgorithmEnum algorithm) {
+        switch (algorithm) {
+            case RS256, PS256 -> {
+                if (!(publicKey instanceof RSAPublicKey rsa)) {
+                    throw new InvalidKeyException("Clé RSA attendue pour " + algorithm);
+                }
+                int bits = rsa.getModulus().bitLength();
+                if (bits < MIN_RSA_KEY_BITS) {
+                    throw new WeakKeyException("Clé RSA de " + bits + " bits refusée pour " + algorithm
+                            + " : " + MIN_RSA_KEY_BITS + " bits au minimum");
+                }
+            }
+            case ES256, ES384, ES512 -> {
+                // courbe P-256, P-384 ou P-521 : taille du corps indiquée par son nom
+                int expectedBits = Integer.parseInt(algorithm.getCurve().substring(2));
+                if (!(publicKey instanceof ECPublicKey ec)
+                        || ec.getParams().getCurve().getField().getFieldSize() != expectedBits) {
+                    throw new InvalidKeyException("Clé EC sur la courbe " + algorithm.getCurve() + " attendue pour " + algorithm);
+                }
+            }
+            case EdDSA -> {
+                String keyAlgorithm = publicKey.getAlgorithm();
+                if (!"EdDSA".equals(keyAlgorithm) && !"Ed25519".equals(keyAlgorithm) && !"Ed448".equals(keyAlgorithm)) {
+                    throw new InvalidKeyException("Clé Edwards attendue pour " + algorithm);
+                }
+            }
+        }
+    }
+
+    public Jwk jwk() {
+        return jwk;
+    }
+
+    public PublicKey publicKey() {
+        return publicKey;
+    }
+
+    public JwtAlgorithmEnum algorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Vérifier la signature d'un JWT compact puis lire ses claims ({@code exp} et {@code nbf} contrôlés).
+     */
+    public Claims verify(String jwtToken) {
+        return verify(jwtToken, Instant.now());
+    }
+
+    /**
+     * Vérifier la signature d'un JWT compact puis lire ses claims, {@code exp} et {@code nbf} étant
+     * contrôlés à l'instant {@code validAt} (contrôle d'archives : validité au moment de l'émission).
+     */
+    public Claims verify(String jwtToken, Instant validAt) {
+        Claims claims = verifySignature(jwtToken);
+        long at = validAt.toEpochMilli();
+        Date expiration = claims.getExpiration();
+        if (expiration != null && at > expiration.getTime()) {
+            throw new ExpiredJwtException(null, claims, "JWT expiré le " + expiration.toInstant());
+        }
+        Date notBefore = claims.getNotBefore();
+        if (notBefore != null && at < notBefore.getTime()) {
+            throw new PrematureJwtException(null, claims, "JWT valable à partir du " + notBefore.toInstant());
+        }
+        return claims;
+    }
+
+    /**
+     * Vérifier uniquement la signature d'un JWT compact puis lire ses claims, sans contrôle de
+     * {@code exp} ni de {@code nbf}.
+     */
+    public Claims verifySignature(String jwtToken) {
+        int payloadStart = jwtToken.indexOf('.') + 1;
+        int signatureStart = jwtToken.indexOf('.', payloadStart) + 1;
+        if (payloadStart <= 1 || signatureStart <= payloadStart || jwtToken.indexOf('.', signatureStart) >= 0) {
+            throw new MalformedJwtException("JWT invalide : trois segments attendus");
+        }
+
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(jwtToken.substring(signatureStart));
+        } catch (IllegalArgumentException e) {
+            throw new MalformedJwtException("JWT invalide : signature mal encodée", e);
+        }
+        if (!signatureMatches(jwtToken.getBytes(StandardCharsets.US_ASCII), signatureStart - 1, signature)) {
+            throw new SignatureException("Signature JWT invalide");
+        }
+        return readClaims(jwtToken.substring(payloadStart, signatureStart - 1));
+    }
+
+    private boolean signatureMatches(byte[] token, int signingInputLength, byte[] signature) {
+        Signature engine = borrow();
+        try {
+            engine.update(token, 0, signingInputLength);
+            boolean valid = engine.verify(signature);
+            release(engine);
+            return valid;
+        } catch (java.security.SignatureException e) {
+            // signature de longueur ou de format inattendu : le moteur, dans un état incertain, n'est pas rendu
+            return false;
+        }
+    }
+
+    private Signature borrow() {
+        Signature engine = idleEngines.poll();
+        if (engine != null) {
+            idleCount.decrementAndGet();
+            return engine;
+        }
+        try {
+            return newEngine();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Moteur de signature " + algorithm + " indisponible", e);
+        }
+    }
+
+    private void release(Signature engine) {
+        if (idleCount.incrementAndGet() <= MAX_IDLE_ENGINES) {
+            idleEngines.offer(engine);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    private Signature newEngine() throws GeneralSecurityException {
+        Signature engine = algorithm.newSignature();
+        engine.initVerify(publicKey);
+        return engine;
+    }
+
+    private static Claims readClaims(String payload) {
+        Map<String, Object> claims;
+        try {
+            claims = CLAIMS_READER.readValue(Base64.getUrlDecoder().decode(payload));
+        } catch (IllegalArgumentException | IOException e) {
+            throw new MalformedJwtException("JWT invalide : claims illisibles", e);
+        }
+        if (claims == null) {
+            throw new MalformedJwtException("JWT invalide : claims absents");
+        }
+        return Jwts.claims().add(claims).build();
+    }
+}
@@ -0,0 +1,125 @@
+package fr.gouv.dnum.proconnect.web.metrics;
+
+import fr.gouv.dnum.proconnect.web.resilience.CallNotPermittedException;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Métriques du parcours de connexion ProConnect : durée de chaque étape du callback,
+ * durée globale par issue et compteurs de rejet par motif.
+ * <ul>
+ *     <li>{@code proconnect.login.stage{stage}} : durée d'une étape (histogramme)</li>
+ *     <li>{@code proconnect.login{outcome}} : durée totale du callback (histogramme)</li>
+ *     <li>{@code proconnect.login.rejected{reason}} : connexions refusées</li>
+ * </ul>
+ */
+@Component
+public class LoginMetrics {
+
+    public enum Stage {
+        TOKEN_EXCHANGE, ID_TOKEN_VERIFICATION, USERINFO_FETCH, USERINFO_VERIFICATION, SESSION_WRITE
+    }
+
+    public enum Rejection {
+        NO_SESSION, BAD_STATE, HANDSHAKE_EXPIRED, HANDSHAKE_REPLAYED, BAD_ISS, BAD_AUD, EXPIRED, BAD_NONCE, TOKEN_REPLAYED, REPLAY_CACHE_FULL, BAD_SUB, INVALID_JWT, UNAVAILABLE, HTTP_ERROR, ERROR
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<Rejection, Counter> rejections = new EnumMap<>(Rejection.class);
+
+    public LoginMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("proconnect.login.stage")
+                    .description("Durée d'une étape du callback ProConnect")
+                    .tag("stage", tagValue(stage))
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        for (Rejection rejection : Rejection.values()) {
+            rejections.put(rejection, Counter.builder("proconnect.login.rejected")
+                    .description("Connexions ProConnect refusées")
+                    .tag("reason", tagValue(rejection))
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Exécuter une étape du callback en mesurant sa durée.
+     */
+    public <T> T time(Stage stage, Callable<T> step) throws Exception {
+        return stageTimers.get(stage).recordCallable(step);
+    }
+
+    public Timer.Sample startLogin() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * Terminer la mesure globale du callback.
+     *
+     * @param outcome {@code success} ou {@code failure}
+     */
+    public void stopLogin(Timer.Sample sample, String outcome) {
+        sample.stop(Timer.builder("proconnect.login")
+                .description("Durée totale du callback ProConnect")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    public void reject(Rejection rejection) {
+        rejections.get(rejection).increment();
+    }
+
+    /**
+     * Comptabiliser un rejet à partir de l'exception ayant interrompu le callback.
+     *
+     * @return le motif retenu
+     */
+    public Rejection reject(Throwable error) {
+        Rejection rejection = rejectionOf(error);
+        reject(rejection);
+        return rejection;
+    }
+
+    static Rejection rejectionOf(Throwable error) {
+        if (error instanceof SecurityException) {
+            // messages de IdTokenValidator : "bad iss", "bad aud", "expired", "bad nonce", "token replayed",
+            // de ReplayCache : "replay cache full", de ProConnectPrincipal : "bad sub"
+            // et de PendingAuthorizationStore : "no session", "bad state", "handshake expired", "handshake replayed"
+            try {
+                return Rejection.valueOf(String.valueOf(error.getMessage()).toUpperCase(Locale.ROOT).replace(' ', '_'));
+            } catch (IllegalArgumentException e) {
+                return Rejection.ERROR;
+            }
+        }
+        if (error instanceof JwtException) {
+            return Rejection.INVALID_JWT;
+        }
+        if (error instanceof CallNotPermittedException) {
+            // disjoncteur ouvert ou bulkhead plein : ProConnect n'a pas été appelé
+            return Rejection.UNAVAILABLE;
+        }
+        if (error instanceof RestClientException || error instanceof HttpTimeoutException || error instanceof IOException) {
+            return Rejection.HTTP_ERROR;
+        }
+        return Rejection.ERROR;
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
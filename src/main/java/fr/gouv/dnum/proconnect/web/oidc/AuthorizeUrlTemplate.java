@@ -0,0 +1,65 @@
+package fr.gouv.dnum.proconnect.web.oidc;
+
+import fr.gouv.dnum.proconnect.Constants;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * URL d'autorisation pré-construite pour un endpoint donné : seuls {@code nonce} et
+ * {@code state} changent d'un lien de connexion à l'autre.
+ * <p>
+ * La partie fixe (client_id, response_type, scope, redirect_uri) est produite une seule fois par
+ * {@link UriComponentsBuilder}, avec des marqueurs à la place des deux valeurs dynamiques ;
+ * {@link #build(long, String)} ne fait ensuite qu'une concaténation.
+ */
+public final class AuthorizeUrlTemplate {
+
+    private static final String NONCE_MARKER = "__NONCE__";
+    private static final String STATE_MARKER = "__STATE__";
+
+    private final String authorizationEndpoint;
+    private final String beforeNonce;
+    private final String beforeState;
+    private final String afterState;
+
+    private AuthorizeUrlTemplate(String authorizationEndpoint, String beforeNonce, String beforeState, String afterState) {
+        this.authorizationEndpoint = authorizationEndpoint;
+        this.beforeNonce = beforeNonce;
+        this.beforeState = beforeState;
+        this.afterState = afterState;
+    }
+
+    public static AuthorizeUrlTemplate of(String authorizationEndpoint) {
+        String url = UriComponentsBuilder
+                .fromHttpUrl(authorizationEndpoint)
+                .queryParam("client_id", Constants.ProConnect.CLIENT_ID)
+                .queryParam("nonce", NONCE_MARKER)
+                .queryParam("response_type", "code")
+                .queryParam("scope", "openid profile email siret")
+                .queryParam("state", STATE_MARKER)
+                .queryParam("redirect_uri", Constants.MyApplication.REDIRECT_URI)
+                .build(false) // ne pas ré-encoder
+                .toUriString();
+
+        int nonce = url.indexOf(NONCE_MARKER);
+        int state = url.indexOf(STATE_MARKER);
+        return new AuthorizeUrlTemplate(authorizationEndpoint,
+                url.substring(0, nonce),
+                url.substring(nonce + NONCE_MARKER.length(), state),
+                url.substring(state + STATE_MARKER.length()));
+    }
+
+    public String authorizationEndpoint() {
+        return authorizationEndpoint;
+    }
+
+    /**
+     * URL d'autorisation pour ce nonce et ce state (le state ne doit pas nécessiter d'encodage).
+     */
+    public String build(String nonce, String state) {
+        return new StringBuilder(beforeNonce.length() + beforeState.length() + afterState.length() + 64)
+                .append(beforeNonce).append(nonce)
+                .append(beforeState).append(state)
+                .append(afterState)
+                .toString();
+    }
+}
@@ -0,0 +1,26 @@
+package fr.gouv.dnum.proconnect.web.oidc;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Configuration de la découverte OpenID Connect : changer d'environnement ProConnect
+ * (intégration, production, RIE) ne nécessite que {@code proconnect.oidc.discovery-uri}.
+ */
+@Configuration
+public class OidcConfig {
+
+    @Bean
+    public OidcMetadataProvider oidcMetadataProvider(RestTemplate proConnectRestTemplate,
+                                                     @Value("${proconnect.oidc.discovery-uri}") URI discoveryUri,
+                                                     @Value("${proconnect.oidc.refresh-interval:1h}") Duration refreshInterval) {
+        OidcMetadataProvider provider = new OidcMetadataProvider(proConnectRestTemplate, discoveryUri, refreshInterval);
+        provider.start();
+        return provider;
+    }
+}
@@ -0,0 +1,84 @@
+package fr.gouv.dnum.proconnect.web.oidc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fr.gouv.dnum.proconnect.Constants;
+import fr.gouv.dnum.proconnect.web.jwt.JwtAlgorithmEnum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Métadonnées OpenID Connect du fournisseur ProConnect ({@code /.well-known/openid-configuration}).
+ */
+public record OidcMetadata(String issuer,
+                           String authorizationEndpoint,
+                           String tokenEndpoint,
+                           String userinfoEndpoint,
+                           String endSessionEndpoint,
+                           String jwksUri,
+                           List<String> idTokenSigningAlgValuesSupported,
+                           List<String> userinfoSigningAlgValuesSupported) {
+
+    /**
+     * Métadonnées construites à partir de {@link Constants.ProConnect}, utilisées tant que
+     * le document de découverte n'a pas pu être chargé.
+     */
+    public static OidcMetadata defaults() {
+        return new OidcMetadata(
+                Constants.ProConnect.ENVIRONMENT,
+                Constants.ProConnect.AUTH_ENDPOINT,
+                Constants.ProConnect.TOKEN_ENDPOINT,
+                Constants.ProConnect.USERINFO_ENDPOINT,
+                Constants.ProConnect.DISCONNECT_ENDPOINT,
+                Constants.ProConnect.JWKS_ENDPOINT,
+                List.of("ES256"),
+                List.of("ES256"));
+    }
+
+    /**
+     * Algorithmes acceptés pour la signature de l'ID token : ceux annoncés par ProConnect,
+     * restreints à la liste autorisée de {@link JwtAlgorithmEnum}.
+     */
+    public Set<JwtAlgorithmEnum> idTokenAlgorithms() {
+        return JwtAlgorithmEnum.supportedAmong(idTokenSigningAlgValuesSupported);
+    }
+
+    /**
+     * Algorithmes acceptés pour la signature de la réponse userinfo.
+     */
+    public Set<JwtAlgorithmEnum> userinfoAlgorithms() {
+        return JwtAlgorithmEnum.supportedAmong(userinfoSigningAlgValuesSupported);
+    }
+
+    /**
+     * Lire les champs utiles du document de découverte ; les champs absents reprennent
+     * la valeur de {@code fallback}.
+     */
+    static OidcMetadata fromJson(JsonNode json, OidcMetadata fallback) {
+        return new OidcMetadata(
+                text(json, "issuer", fallback.issuer()),
+                text(json, "authorization_endpoint", fallback.authorizationEndpoint()),
+                text(json, "token_endpoint", fallback.tokenEndpoint()),
+                text(json, "userinfo_endpoint", fallback.userinfoEndpoint()),
+                text(json, "end_session_endpoint", fallback.endSessionEndpoint()),
+                text(json, "jwks_uri", fallback.jwksUri()),
+                list(json, "id_token_signing_alg_values_supported", fallback.idTokenSigningAlgValuesSupported()),
+                list(json, "userinfo_signing_alg_values_supported", fallback.userinfoSigningAlgValuesSupported()));
+    }
+
+    private static String text(JsonNode json, String field, String fallback) {
+        JsonNode value = json.get(field);
+        return value != null && value.isTextual() ? value.asText() : fallback;
+    }
+
+    private static List<String> list(JsonNode json, String field, List<String> fallback) {
+        JsonNode value = json.get(field);
+        if (value == null || !value.isArray()) {
+            return fallback;
+        }
+        List<String> values = new ArrayList<>();
+        value.forEach(item -> values.add(item.asText()));
+        return List.copyOf(values);
+    }
+}
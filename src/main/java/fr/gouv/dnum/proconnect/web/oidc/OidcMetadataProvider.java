@@ -0,0 +1,125 @@
+package fr.gouv.dnum.proconnect.web.oidc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fournit les métadonnées OpenID Connect de ProConnect.
+ * <p>
+ * Le document de découverte est chargé au démarrage puis rafraîchi périodiquement en tâche de fond
+ * par des requêtes conditionnelles ({@code If-None-Match} / {@code If-Modified-Since}) : tant que
+ * le document ne change pas, ProConnect répond 304 et l'instantané courant est conservé sans
+ * nouvelle analyse. En cas d'échec, la dernière version connue (ou {@link OidcMetadata#defaults()})
+ * reste utilisée.
+ */
+@Slf4j
+public class OidcMetadataProvider implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final RestTemplate restTemplate;
+    private final URI discoveryUri;
+    private final Duration refreshInterval;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile OidcMetadata current;
+    // Validateurs HTTP de la dernière réponse, lus et écrits uniquement par refresh()
+    private String etag;
+    private String lastModified;
+
+    public OidcMetadataProvider(RestTemplate restTemplate, URI discoveryUri, Duration refreshInterval) {
+        this.restTemplate = restTemplate;
+        this.discoveryUri = discoveryUri;
+        this.refreshInterval = refreshInterval;
+        this.current = OidcMetadata.defaults();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "oidc-metadata-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Fournisseur figé, sans appel réseau (tests, configuration statique).
+     */
+    public static OidcMetadataProvider fixed(OidcMetadata metadata) {
+        OidcMetadataProvider provider = new OidcMetadataProvider(null, null, Duration.ZERO);
+        provider.current = metadata;
+        provider.scheduler.shutdown();
+        return provider;
+    }
+
+    /**
+     * Charger le document de découverte puis planifier son rafraîchissement.
+     */
+    public void start() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("Découverte OIDC indisponible ({}), utilisation des endpoints par défaut : {}",
+                    discoveryUri, e.getMessage());
+        }
+        long interval = refreshInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                log.warn("Échec du rafraîchissement de la découverte OIDC : {}", e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public OidcMetadata current() {
+        return current;
+    }
+
+    /**
+     * Recharger le document si celui-ci a changé.
+     *
+     * @return {@code true} si de nouvelles métadonnées ont été analysées
+     */
+    boolean refresh() throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        if (etag != null) {
+            headers.setIfNoneMatch(etag);
+        }
+        if (lastModified != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        ResponseEntity<byte[]> response = restTemplate.exchange(
+                discoveryUri, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+            log.debug("Découverte OIDC inchangée (304)");
+            return false;
+        }
+        if (response.getBody() == null) {
+            throw new IOException("Document de découverte vide : " + discoveryUri);
+        }
+
+        current = OidcMetadata.fromJson(MAPPER.readTree(response.getBody()), OidcMetadata.defaults());
+        etag = response.getHeaders().getETag();
+        lastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+        log.info("Découverte OIDC chargée depuis {} (issuer {})", discoveryUri, current.issuer());
+        return true;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,206 @@
+package fr.gouv.dnum.proconnect.web.replay;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Valeurs consommées, en mémoire et par tranches de temps, sans verrou et à mémoire bornée.
+ * <p>
+ * L'horizon est découpé en {@code buckets} tranches : une valeur est rangée dans la tranche de son
+ * expiration, et une tranche révolue est remplacée d'un bloc par une tranche vide, sans parcours
+ * ni purge. Chaque tranche est une table à adressage ouvert d'empreintes de 64 bits (SHA-256 de
+ * la valeur), de capacité fixe : la mémoire occupée ne dépend pas du débit de connexions. Une
+ * tranche pleine refuse les nouvelles valeurs ({@link ReplayCacheFullException}) plutôt que
+ * d'oublier les anciennes.
+ * <p>
+ * Une expiration au-delà de l'horizon est ramenée à la dernière tranche : l'horizon doit couvrir
+ * la plus longue durée de validité des valeurs enregistrées.
+ * <ul>
+ *     <li>{@code proconnect.replay.checks{result}} : {@code first_use}, {@code replayed}, {@code full}</li>
+ *     <li>{@code proconnect.replay.size} : valeurs mémorisées</li>
+ * </ul>
+ */
+public class InMemoryReplayCache implements ReplayCache {
+
+    private final long bucketMillis;
+    private final int bucketCapacity;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final Clock clock;
+    private final Counter firstUses;
+    private final Counter replays;
+    private final Counter overflows;
+
+    /**
+     * @param maxEntries valeurs mémorisées au maximum sur l'horizon, réparties entre les tranches
+     */
+    public InMemoryReplayCache(Duration horizon, int buckets, int maxEntries, Clock clock, MeterRegistry registry) {
+        if (buckets < 1 || horizon.toMillis() < buckets) {
+            throw new IllegalArgumentException("Horizon ou nombre de tranches invalide : " + horizon + ", " + buckets);
+        }
+        this.bucketMillis = horizon.toMillis() / buckets;
+        this.bucketCapacity = Math.max(1, maxEntries / buckets);
+        // une tranche de plus : la tranche courante n'est que partiellement écoulée
+        this.buckets = new AtomicReferenceArray<>(buckets + 1);
+        this.clock = clock;
+        this.firstUses = checks("first_use", registry);
+        this.replays = checks("replayed", registry);
+        this.overflows = checks("full", registry);
+        Gauge.builder("proconnect.replay.size", this, InMemoryReplayCache::size)
+                .description("Valeurs consommées mémorisées")
+                .register(registry);
+    }
+
+    @Override
+    public boolean markUsed(Kind kind, String value, Instant expiresAt) {
+        long currentSlot = clock.millis() / bucketMillis;
+        long lastSlot = currentSlot + buckets.length() - 1;
+        long slot = Math.min(Math.max(expiresAt.toEpochMilli() / bucketMillis, currentSlot), lastSlot);
+        long fingerprint = fingerprint(kind, value);
+
+        // une même valeur peut avoir été enregistrée avec une autre expiration
+        for (long other = currentSlot; other <= lastSlot; other++) {
+            Bucket bucket = other != slot ? liveBucket(other) : null;
+            if (bucket != null && bucket.contains(fingerprint)) {
+                replays.increment();
+                return false;
+            }
+        }
+        switch (bucket(slot).add(fingerprint)) {
+            case ADDED -> {
+                firstUses.increment();
+                return true;
+            }
+            case PRESENT -> {
+                replays.increment();
+                return false;
+            }
+            default -> {
+                overflows.increment();
+                throw new ReplayCacheFullException();
+            }
+        }
+    }
+
+    /**
+     * Tranche du créneau {@code slot}, créée (en remplacement d'une tranche révolue) si nécessaire.
+     */
+    private Bucket bucket(long slot) {
+        int index = (int) (slot % buckets.length());
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.slot >= slot) {
+                return bucket;
+            }
+            Bucket fresh = new Bucket(slot, bucketCapacity);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private Bucket liveBucket(long slot) {
+        Bucket bucket = buckets.get((int) (slot % buckets.length()));
+        return bucket != null && bucket.slot == slot ? bucket : null;
+    }
+
+    int size() {
+        long currentSlot = clock.millis() / bucketMillis;
+        int size = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.slot >= currentSlot) {
+                size += Math.min(bucket.size.get(), bucketCapacity);
+            }
+        }
+        return size;
+    }
+
+    private static long fingerprint(Kind kind, String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((byte) kind.ordinal());
+            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+            long fingerprint = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                fingerprint = (fingerprint << 8) | (hash[i] & 0xFF);
+            }
+            // 0 marque une case libre
+            return fingerprint != 0 ? fingerprint : 1;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Counter checks(String result, MeterRegistry registry) {
+        return Counter.builder("proconnect.replay.checks")
+                .description("Valeurs à usage unique contrôlées")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Table d'empreintes à adressage ouvert (sondage linéaire), remplie au plus à moitié.
+     */
+    private static final class Bucket {
+
+        enum Insertion {ADDED, PRESENT, FULL}
+
+        final long slot;
+        final int capacity;
+        final AtomicLongArray fingerprints;
+        final AtomicInteger size = new AtomicInteger();
+
+        Bucket(long slot, int capacity) {
+            this.slot = slot;
+            this.capacity = capacity;
+            this.fingerprints = new AtomicLongArray(Integer.highestOneBit(capacity * 2 - 1) << 1);
+        }
+
+        boolean contains(long fingerprint) {
+            int mask = fingerprints.length() - 1;
+            for (int i = (int) fingerprint & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                long current = fingerprints.get(i);
+                if (current == fingerprint) {
+                    return true;
+                }
+                if (current == 0) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        Insertion add(long fingerprint) {
+            if (size.incrementAndGet() > capacity) {
+                size.decrementAndGet();
+                return contains(fingerprint) ? Insertion.PRESENT : Insertion.FULL;
+            }
+            int mask = fingerprints.length() - 1;
+            int i = (int) fingerprint & mask;
+            while (true) {
+                long current = fingerprints.get(i);
+                if (current == 0 && fingerprints.compareAndSet(i, 0, fingerprint)) {
+                    return Insertion.ADDED;
+                }
+                // case prise entre-temps : la relire avant de passer à la suivante
+                current = fingerprints.get(i);
+                if (current == fingerprint) {
+                    size.decrementAndGet();
+                    return Insertion.PRESENT;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package fr.gouv.dnum.proconnect.web.replay;
+
+import java.time.Instant;
+
+/**
+ * Détection du rejeu des valeurs à usage unique de la connexion ({@code state}, nonce, {@code jti}).
+ * <p>
+ * Une valeur est mémorisée jusqu'à {@code expiresAt} : au-delà, le jeton ou le cookie qui la porte
+ * est de toute façon refusé comme expiré. L'implémentation par défaut ({@link InMemoryReplayCache})
+ * est locale à l'instance ; un autre bean {@code ReplayCache} {@code @Primary} (stockage partagé)
+ * étend la détection à toutes les instances, par exemple avec le stockage du handshake par cookie.
+ */
+public interface ReplayCache {
+
+    enum Kind {
+        STATE, NONCE, JTI
+    }
+
+    /**
+     * Enregistrer une valeur consommée.
+     *
+     * @param expiresAt instant à partir duquel la valeur peut être oubliée
+     * @return {@code true} à la première utilisation, {@code false} si la valeur a déjà été enregistrée
+     * @throws ReplayCacheFullException si la valeur ne peut plus être enregistrée (capacité atteinte) :
+     *                                  elle est alors refusée, sans être comptée comme un rejeu
+     */
+    boolean markUsed(Kind kind, String value, Instant expiresAt);
+}
@@ -0,0 +1,18 @@
+package fr.gouv.dnum.proconnect.web.replay;
+
+import java.io.Serial;
+
+/**
+ * Valeur à usage unique refusée faute de place dans le {@link ReplayCache} : elle n'a jamais été
+ * vue, mais ne peut pas être mémorisée. Le motif de rejet ({@code "replay cache full"}) est distinct
+ * d'un rejeu.
+ */
+public class ReplayCacheFullException extends SecurityException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public ReplayCacheFullException() {
+        super("replay cache full");
+    }
+}
@@ -0,0 +1,25 @@
+package fr.gouv.dnum.proconnect.web.replay;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Détection du rejeu en mémoire locale. Une implémentation partagée entre les instances se
+ * substitue à celle-ci en étant déclarée comme bean {@code @Primary}.
+ */
+@Configuration
+public class ReplayConfig {
+
+    @Bean
+    public ReplayCache replayCache(@Value("${proconnect.replay.horizon:10m}") Duration horizon,
+                                   @Value("${proconnect.replay.buckets:10}") int buckets,
+                                   @Value("${proconnect.replay.max-entries:200000}") int maxEntries,
+                                   MeterRegistry meterRegistry) {
+        return new InMemoryReplayCache(horizon, buckets, maxEntries, Clock.systemUTC(), meterRegistry);
+    }
+}
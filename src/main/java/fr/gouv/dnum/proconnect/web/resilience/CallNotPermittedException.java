@@ -0,0 +1,35 @@
+package fr.gouv.dnum.proconnect.web.resilience;
+
+import java.io.IOException;
+import java.io.Serial;
+
+/**
+ * Appel à ProConnect refusé sans être tenté : disjoncteur ouvert ou trop d'appels déjà en cours.
+ */
+public class CallNotPermittedException extends IOException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        CIRCUIT_OPEN, BULKHEAD_FULL
+    }
+
+    private final ProConnectEndpoint endpoint;
+    private final Reason reason;
+
+    public CallNotPermittedException(ProConnectEndpoint endpoint, Reason reason) {
+        super("Appel " + endpoint.tagValue() + " ProConnect refusé : "
+                + (reason == Reason.CIRCUIT_OPEN ? "disjoncteur ouvert" : "trop d'appels en cours"));
+        this.endpoint = endpoint;
+        this.reason = reason;
+    }
+
+    public ProConnectEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,105 @@
+package fr.gouv.dnum.proconnect.web.resilience;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Disjoncteur d'un endpoint : après {@code failureThreshold} échecs consécutifs, les appels sont
+ * refusés pendant {@code openDuration}, puis un seul appel d'essai est autorisé. Son succès referme
+ * le disjoncteur, son échec le rouvre pour une nouvelle période.
+ * <p>
+ * Seul le résultat d'un appel autorisé dans l'état courant fait évoluer le disjoncteur : un appel
+ * lent, autorisé avant l'ouverture, ne le referme pas en aboutissant.
+ */
+@Slf4j
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final ProConnectEndpoint endpoint;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(ProConnectEndpoint endpoint, int failureThreshold, Duration openDuration, Clock clock) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Seuil d'échecs invalide : " + failureThreshold);
+        }
+        this.endpoint = endpoint;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openDuration.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * Demander l'autorisation d'un appel.
+     *
+     * @return l'état dans lequel l'appel est autorisé, à rendre à {@link #onSuccess}, {@link #onFailure}
+     * ou {@link #release} ; {@code null} si l'appel est refusé
+     */
+    synchronized State tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.millis() - openedAt < openMillis) {
+                return null;
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return null;
+            }
+            trialInFlight = true;
+        }
+        return state;
+    }
+
+    synchronized void onSuccess(State acquiredIn) {
+        if (acquiredIn == State.HALF_OPEN && state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            trialInFlight = false;
+            consecutiveFailures = 0;
+            log.info("Disjoncteur {} refermé", endpoint.tagValue());
+        } else if (state == State.CLOSED) {
+            consecutiveFailures = 0;
+        }
+    }
+
+    synchronized void onFailure(State acquiredIn) {
+        if (acquiredIn == State.HALF_OPEN && state == State.HALF_OPEN) {
+            open();
+        } else if (acquiredIn == State.CLOSED && state == State.CLOSED && ++consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * Rendre une autorisation sans résultat (appel annulé ou non effectué).
+     */
+    synchronized void release(State acquiredIn) {
+        if (acquiredIn == State.HALF_OPEN && state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.millis();
+        trialInFlight = false;
+        consecutiveFailures = 0;
+        log.warn("Disjoncteur {} ouvert : appels refusés pendant {} ms", endpoint.tagValue(), openMillis);
+    }
+}
@@ -0,0 +1,242 @@
+package fr.gouv.dnum.proconnect.web.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Protection des appels à un endpoint ProConnect : délai maximum, nombre d'appels simultanés
+ * borné (bulkhead) et disjoncteur.
+ * <p>
+ * Un appel bloquant ({@link #call}) s'exécute dans un thread virtuel ; l'appelant n'attend pas
+ * au-delà de {@code timeout} et le thread virtuel est alors interrompu, ce qui ferme la connexion
+ * en cours. La place dans le bulkhead n'est rendue qu'à la fin effective de l'appel : un endpoint
+ * qui ne répond plus sature son bulkhead et les appels suivants sont refusés immédiatement, sans
+ * immobiliser d'autres threads. Une erreur 4xx est une réponse de ProConnect, pas une panne :
+ * elle ne compte pas comme un échec pour le disjoncteur.
+ * <ul>
+ *     <li>{@code proconnect.outbound.calls{endpoint,outcome}} : {@code success}, {@code failure}, {@code timeout}, {@code cancelled}</li>
+ *     <li>{@code proconnect.outbound.rejected{endpoint,reason}} : {@code circuit_open}, {@code bulkhead_full}</li>
+ *     <li>{@code proconnect.outbound.breaker.state{endpoint}} : 0 fermé, 1 essai en cours, 2 ouvert</li>
+ *     <li>{@code proconnect.outbound.active{endpoint}} : appels en cours</li>
+ * </ul>
+ */
+public class EndpointGuard {
+
+    private enum Outcome {
+        SUCCESS, FAILURE, TIMEOUT, CANCELLED
+    }
+
+    // un thread virtuel par appel bloquant, interrompu au dépassement du délai
+    private static final ExecutorService CALL_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final ProConnectEndpoint endpoint;
+    private final Duration timeout;
+    private final int maxConcurrent;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker breaker;
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+    private final Map<CallNotPermittedException.Reason, Counter> rejections = new EnumMap<>(CallNotPermittedException.Reason.class);
+
+    private EndpointGuard(ProConnectEndpoint endpoint, Duration timeout, int maxConcurrent, int failureThreshold,
+                          Duration openDuration, Clock clock, MeterRegistry registry) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("Nombre d'appels simultanés invalide : " + maxConcurrent);
+        }
+        this.endpoint = endpoint;
+        this.timeout = timeout;
+        this.maxConcurrent = maxConcurrent;
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.breaker = new CircuitBreaker(endpoint, failureThreshold, openDuration, clock);
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, Counter.builder("proconnect.outbound.calls")
+                    .description("Appels sortants vers ProConnect")
+                    .tag("endpoint", endpoint.tagValue())
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        for (CallNotPermittedException.Reason reason : CallNotPermittedException.Reason.values()) {
+            rejections.put(reason, Counter.builder("proconnect.outbound.rejected")
+                    .description("Appels sortants refusés sans être tentés")
+                    .tag("endpoint", endpoint.tagValue())
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Créer la protection d'un endpoint et enregistrer ses jauges, une fois l'objet entièrement construit
+     * (la jauge {@code proconnect.outbound.active} conserve une référence vers la protection).
+     */
+    public static EndpointGuard create(ProConnectEndpoint endpoint, Duration timeout, int maxConcurrent, int failureThreshold,
+                                       Duration openDuration, Clock clock, MeterRegistry registry) {
+        EndpointGuard guard = new EndpointGuard(endpoint, timeout, maxConcurrent, failureThreshold, openDuration, clock, registry);
+        Gauge.builder("proconnect.outbound.breaker.state", guard.breaker, b -> b.state().ordinal())
+                .description("État du disjoncteur : 0 fermé, 1 essai en cours, 2 ouvert")
+                .tag("endpoint", endpoint.tagValue())
+                .register(registry);
+        Gauge.builder("proconnect.outbound.active", guard, EndpointGuard::active)
+                .description("Appels sortants en cours")
+                .tag("endpoint", endpoint.tagValue())
+                .register(registry);
+        return guard;
+    }
+
+    public ProConnectEndpoint endpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Délai maximum d'un appel, à appliquer aussi comme délai de la requête des appels asynchrones.
+     */
+    public Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * Exécuter un appel bloquant.
+     *
+     * @throws CallNotPermittedException si l'appel est refusé (disjoncteur ouvert, bulkhead plein)
+     * @throws HttpTimeoutException      si l'appel n'a pas abouti dans le délai
+     */
+    public <T> T call(Callable<T> call) throws IOException {
+        CircuitBreaker.State acquiredIn = acquire();
+        Future<T> future = CALL_EXECUTOR.submit(() -> {
+            try {
+                return call.call();
+            } finally {
+                bulkhead.release();
+            }
+        });
+        try {
+            T result = future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            complete(acquiredIn, Outcome.SUCCESS);
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            complete(acquiredIn, Outcome.TIMEOUT);
+            throw new HttpTimeoutException("Pas de réponse de l'endpoint " + endpoint.tagValue() + " ProConnect en " + timeout);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            complete(acquiredIn, outcomeOf(cause));
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            complete(acquiredIn, Outcome.CANCELLED);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Appel " + endpoint.tagValue() + " ProConnect interrompu");
+        }
+    }
+
+    /**
+     * Exécuter un appel asynchrone. Le délai est celui de la requête elle-même ({@link #timeout()}) ;
+     * le future retourné est celui de {@code call}, dont l'annulation interrompt donc bien l'échange.
+     *
+     * @param failed résultats à compter comme des échecs (par exemple une réponse HTTP 5xx)
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call, Predicate<? super T> failed) {
+        CircuitBreaker.State acquiredIn;
+        try {
+            acquiredIn = acquire();
+        } catch (CallNotPermittedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            bulkhead.release();
+            complete(acquiredIn, Outcome.FAILURE);
+            return CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((result, error) -> {
+            bulkhead.release();
+            if (error == null) {
+                complete(acquiredIn, failed.test(result) ? Outcome.FAILURE : Outcome.SUCCESS);
+            } else {
+                complete(acquiredIn, outcomeOf(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error));
+            }
+        });
+        return future;
+    }
+
+    int active() {
+        return maxConcurrent - bulkhead.availablePermits();
+    }
+
+    CircuitBreaker.State state() {
+        return breaker.state();
+    }
+
+    private CircuitBreaker.State acquire() throws CallNotPermittedException {
+        CircuitBreaker.State acquiredIn = breaker.tryAcquire();
+        if (acquiredIn == null) {
+            throw reject(CallNotPermittedException.Reason.CIRCUIT_OPEN);
+        }
+        if (!bulkhead.tryAcquire()) {
+            breaker.release(acquiredIn);
+            throw reject(CallNotPermittedException.Reason.BULKHEAD_FULL);
+        }
+        return acquiredIn;
+    }
+
+    private CallNotPermittedException reject(CallNotPermittedException.Reason reason) {
+        rejections.get(reason).increment();
+        return new CallNotPermittedException(endpoint, reason);
+    }
+
+    private void complete(CircuitBreaker.State acquiredIn, Outcome outcome) {
+        outcomes.get(outcome).increment();
+        switch (outcome) {
+            case SUCCESS -> breaker.onSuccess(acquiredIn);
+            case FAILURE, TIMEOUT -> breaker.onFailure(acquiredIn);
+            default -> breaker.release(acquiredIn);
+        }
+    }
+
+    private static Outcome outcomeOf(Throwable error) {
+        if (error instanceof HttpClientErrorException) {
+            return Outcome.SUCCESS;
+        }
+        if (error instanceof HttpTimeoutException) {
+            return Outcome.TIMEOUT;
+        }
+        if (error instanceof CancellationException) {
+            return Outcome.CANCELLED;
+        }
+        return Outcome.FAILURE;
+    }
+}
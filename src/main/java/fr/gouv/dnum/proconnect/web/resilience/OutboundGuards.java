@@ -0,0 +1,64 @@
+package fr.gouv.dnum.proconnect.web.resilience;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Protections des appels sortants vers ProConnect, une par endpoint (token, userinfo, JWKS) :
+ * la panne d'un endpoint n'épuise ni le bulkhead ni le disjoncteur des autres.
+ */
+@Slf4j
+@Component
+public class OutboundGuards {
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+    public static final int DEFAULT_MAX_CONCURRENT = 50;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    private final Map<ProConnectEndpoint, EndpointGuard> guards = new EnumMap<>(ProConnectEndpoint.class);
+
+    @Autowired
+    public OutboundGuards(MeterRegistry registry,
+                          @Value("${proconnect.resilience.token.timeout:5s}") Duration tokenTimeout,
+                          @Value("${proconnect.resilience.userinfo.timeout:3s}") Duration userInfoTimeout,
+                          @Value("${proconnect.resilience.jwks.timeout:3s}") Duration jwksTimeout,
+                          @Value("${proconnect.resilience.max-concurrent:50}") int maxConcurrent,
+                          @Value("${proconnect.resilience.breaker.failure-threshold:5}") int failureThreshold,
+                          @Value("${proconnect.resilience.breaker.open-duration:30s}") Duration openDuration) {
+        this(registry, Map.of(ProConnectEndpoint.TOKEN, tokenTimeout,
+                        ProConnectEndpoint.USERINFO, userInfoTimeout,
+                        ProConnectEndpoint.JWKS, jwksTimeout),
+                maxConcurrent, failureThreshold, openDuration, Clock.systemUTC());
+        log.info("Appels ProConnect : délais token={}, userinfo={}, jwks={}, {} appels simultanés par endpoint",
+                tokenTimeout, userInfoTimeout, jwksTimeout, maxConcurrent);
+    }
+
+    public OutboundGuards(MeterRegistry registry, Map<ProConnectEndpoint, Duration> timeouts, int maxConcurrent,
+                          int failureThreshold, Duration openDuration, Clock clock) {
+        for (ProConnectEndpoint endpoint : ProConnectEndpoint.values()) {
+            guards.put(endpoint, EndpointGuard.create(endpoint, timeouts.getOrDefault(endpoint, DEFAULT_TIMEOUT),
+                    maxConcurrent, failureThreshold, openDuration, clock, registry));
+        }
+    }
+
+    /**
+     * Protections avec les réglages par défaut (tests, usage hors Spring).
+     */
+    public static OutboundGuards defaults(MeterRegistry registry) {
+        return new OutboundGuards(registry, Map.of(), DEFAULT_MAX_CONCURRENT, DEFAULT_FAILURE_THRESHOLD,
+                DEFAULT_OPEN_DURATION, Clock.systemUTC());
+    }
+
+    public EndpointGuard get(ProConnectEndpoint endpoint) {
+        return guards.get(endpoint);
+    }
+}
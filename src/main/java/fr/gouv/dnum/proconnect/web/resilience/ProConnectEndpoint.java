@@ -0,0 +1,17 @@
+package fr.gouv.dnum.proconnect.web.resilience;
+
+import java.util.Locale;
+
+/**
+ * Endpoints ProConnect appelés par l'application, chacun protégé par son propre {@link EndpointGuard}.
+ */
+public enum ProConnectEndpoint {
+    TOKEN, USERINFO, JWKS;
+
+    /**
+     * Valeur du tag {@code endpoint} des métriques.
+     */
+    public String tagValue() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,198 @@
+package fr.gouv.dnum.proconnect.web.session;
+
+import io.jsonwebtoken.Claims;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serial;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.security.Principal;
+import java.time.Instant;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Utilisateur connecté via ProConnect, tel que conservé en session : uniquement les claims utilisés
+ * par l'application, sans copie de la réponse userinfo ni jeton.
+ * <p>
+ * La sérialisation Java (persistance et réplication des sessions) passe par un format binaire
+ * compact ({@link #toBytes()}) : un octet de version, un octet indiquant les champs présents, les
+ * chaînes en UTF-8 modifié et l'expiration en secondes sur 4 octets. Le nom de classe n'est écrit
+ * qu'une fois par flux.
+ *
+ * @param sub        identifiant de l'agent chez ProConnect
+ * @param givenName  claim {@code given_name}
+ * @param usualName  claim {@code usual_name} (à défaut {@code family_name})
+ * @param expiresAt  expiration de l'ID token
+ */
+public record ProConnectPrincipal(String sub, String email, String siret, String givenName, String usualName,
+                                  Instant expiresAt) implements Principal, Serializable {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int EMAIL = 1;
+    private static final int SIRET = 1 << 1;
+    private static final int GIVEN_NAME = 1 << 2;
+    private static final int USUAL_NAME = 1 << 3;
+    private static final int EXPIRES_AT = 1 << 4;
+
+    public ProConnectPrincipal {
+        Objects.requireNonNull(sub, "sub");
+        // précision de la seconde, comme le claim exp
+        expiresAt = expiresAt != null ? Instant.ofEpochSecond(expiresAt.getEpochSecond()) : null;
+    }
+
+    /**
+     * Construire le principal à partir de l'ID token vérifié et de la réponse userinfo. Le sub est
+     * celui de l'ID token ; la réponse userinfo doit porter le même (OpenID Connect Core, 5.3.2).
+     *
+     * @throws SecurityException si le sub userinfo est absent ou différent de celui de l'ID token
+     */
+    public static ProConnectPrincipal from(Claims idToken, Map<String, Object> userInfo) {
+        String sub = idToken.getSubject();
+        if (sub == null || !sub.equals(string(userInfo.get("sub")))) {
+            throw new SecurityException("bad sub");
+        }
+        Object usualName = userInfo.get("usual_name") != null ? userInfo.get("usual_name") : userInfo.get("family_name");
+        Date expiration = idToken.getExpiration();
+        return new ProConnectPrincipal(sub, string(userInfo.get("email")), string(userInfo.get("siret")),
+                string(userInfo.get("given_name")), string(usualName), expiration != null ? expiration.toInstant() : null);
+    }
+
+    @Override
+    public String getName() {
+        return sub;
+    }
+
+    /**
+     * Claims non nuls, sous leur nom OpenID Connect ({@code exp} en secondes).
+     */
+    public Map<String, Object> toClaims() {
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("sub", sub);
+        putIfPresent(claims, "email", email);
+        putIfPresent(claims, "siret", siret);
+        putIfPresent(claims, "given_name", givenName);
+        putIfPresent(claims, "usual_name", usualName);
+        putIfPresent(claims, "exp", expiresAt != null ? expiresAt.getEpochSecond() : null);
+        return claims;
+    }
+
+    /**
+     * Format binaire compact, utilisable aussi pour un stockage de session externe.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static ProConnectPrincipal fromBytes(byte[] bytes) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private void write(DataOutput out) throws IOException {
+        int fields = (email != null ? EMAIL : 0) | (siret != null ? SIRET : 0) | (givenName != null ? GIVEN_NAME : 0)
+                | (usualName != null ? USUAL_NAME : 0) | (expiresAt != null ? EXPIRES_AT : 0);
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(fields);
+        out.writeUTF(sub);
+        writeIfPresent(out, email);
+        writeIfPresent(out, siret);
+        writeIfPresent(out, givenName);
+        writeIfPresent(out, usualName);
+        if (expiresAt != null) {
+            // secondes non signées sur 32 bits : jusqu'en 2106
+            out.writeInt((int) expiresAt.getEpochSecond());
+        }
+    }
+
+    private static ProConnectPrincipal read(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new InvalidObjectException("Version du format de ProConnectPrincipal inconnue : " + version);
+        }
+        int fields = in.readUnsignedByte();
+        String sub = in.readUTF();
+        String email = readIfPresent(in, fields, EMAIL);
+        String siret = readIfPresent(in, fields, SIRET);
+        String givenName = readIfPresent(in, fields, GIVEN_NAME);
+        String usualName = readIfPresent(in, fields, USUAL_NAME);
+        Instant expiresAt = (fields & EXPIRES_AT) != 0 ? Instant.ofEpochSecond(Integer.toUnsignedLong(in.readInt())) : null;
+        return new ProConnectPrincipal(sub, email, siret, givenName, usualName, expiresAt);
+    }
+
+    private static void writeIfPresent(DataOutput out, String value) throws IOException {
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readIfPresent(DataInput in, int fields, int field) throws IOException {
+        return (fields & field) != 0 ? in.readUTF() : null;
+    }
+
+    private static void putIfPresent(Map<String, Object> claims, String name, Object value) {
+        if (value != null) {
+            claims.put(name, value);
+        }
+    }
+
+    private static String string(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    @Serial
+    private Object writeReplace() {
+        return new CompactForm(this);
+    }
+
+    /**
+     * Forme sérialisée : le format compact plutôt que la description des champs du record.
+     */
+    private static final class CompactForm implements Externalizable {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private ProConnectPrincipal principal;
+
+        public CompactForm() {
+            // requis par Externalizable
+        }
+
+        CompactForm(ProConnectPrincipal principal) {
+            this.principal = principal;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            principal.write(out);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            principal = read(in);
+        }
+
+        @Serial
+        private Object readResolve() {
+            return principal;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package fr.gouv.dnum.proconnect.web.token;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.gouv.dnum.proconnect.Constants;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import fr.gouv.dnum.proconnect.web.resilience.EndpointGuard;
+import fr.gouv.dnum.proconnect.web.resilience.OutboundGuards;
+import fr.gouv.dnum.proconnect.web.resilience.ProConnectEndpoint;
+import fr.gouv.dnum.proconnect.web.response.BodyResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renouvellement des jetons d'accès à l'aide du refresh token conservé en session.
+ * <p>
+ * {@link #getAccessToken(HttpSession)} retourne un jeton d'accès valable au moins
+ * {@code refreshAhead} : sinon, il est renouvelé auprès du token endpoint avant d'être retourné.
+ * Les requêtes concurrentes d'une même session partagent un unique appel de renouvellement.
+ * <p>
+ * Les jetons bruts ne sont conservés en session qu'avec {@code proconnect.session.store-tokens=true} :
+ * sans eux, aucun renouvellement n'est possible et la déconnexion se fait sans {@code id_token_hint}.
+ * <ul>
+ *     <li>{@code proconnect.token.refresh{outcome}} : durée des renouvellements</li>
+ *     <li>{@code proconnect.token.refresh.coalesced} : demandes servies par un renouvellement déjà en cours</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+public class TokenRefreshService {
+
+    public static final String SESSION_TOKENS = "proConnectTokens";
+    public static final String SESSION_ACCESS_TOKEN = "proConnectAccessToken";
+    public static final String SESSION_ID_TOKEN = "proConnectIdToken";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final RestTemplate restTemplate;
+    private final OidcMetadataProvider oidcMetadataProvider;
+    // délai, bulkhead et disjoncteur partagés avec l'échange du code d'autorisation
+    private final EndpointGuard tokenGuard;
+    private final Duration refreshAhead;
+    private final boolean storeTokens;
+    private final Clock clock;
+    private final MeterRegistry registry;
+    private final Counter coalesced;
+
+    // renouvellement en cours, par identifiant de session
+    private final Map<String, CompletableFuture<TokenSet>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TokenRefreshService(RestTemplate proConnectRestTemplate, OidcMetadataProvider oidcMetadataProvider,
+                               MeterRegistry registry, OutboundGuards outboundGuards,
+                               @Value("${proconnect.token.refresh-ahead:30s}") Duration refreshAhead,
+                               @Value("${proconnect.session.store-tokens:false}") boolean storeTokens) {
+        this(proConnectRestTemplate, oidcMetadataProvider, registry, outboundGuards, refreshAhead, storeTokens,
+                Clock.systemUTC());
+    }
+
+    /**
+     * Service conservant les jetons en session (tests, usage hors Spring).
+     */
+    public TokenRefreshService(RestTemplate proConnectRestTemplate, OidcMetadataProvider oidcMetadataProvider,
+                               MeterRegistry registry, Duration refreshAhead) {
+        this(proConnectRestTemplate, oidcMetadataProvider, registry, OutboundGuards.defaults(registry), refreshAhead,
+                true, Clock.systemUTC());
+    }
+
+    TokenRefreshService(RestTemplate restTemplate, OidcMetadataProvider oidcMetadataProvider, MeterRegistry registry,
+                        OutboundGuards outboundGuards, Duration refreshAhead, boolean storeTokens, Clock clock) {
+        this.restTemplate = restTemplate;
+        this.oidcMetadataProvider = oidcMetadataProvider;
+        this.tokenGuard = outboundGuards.get(ProConnectEndpoint.TOKEN);
+        this.registry = registry;
+        this.refreshAhead = refreshAhead;
+        this.storeTokens = storeTokens;
+        this.clock = clock;
+        this.coalesced = Counter.builder("proconnect.token.refresh.coalesced")
+                .description("Demandes servies par un renouvellement déjà en cours")
+                .register(registry);
+    }
+
+    /**
+     * Enregistrer en session les jetons reçus à la connexion, si l'application l'a demandé.
+     */
+    public void store(HttpSession session, BodyResponse response) {
+        if (!storeTokens) {
+            return;
+        }
+        TokenSet previous = (TokenSet) session.getAttribute(SESSION_TOKENS);
+        write(session, TokenSet.from(response, clock.instant(), previous));
+    }
+
+    /**
+     * Retourner un jeton d'accès valable, en le renouvelant si nécessaire.
+     *
+     * @throws IllegalStateException si la session ne contient aucun jeton, ou un jeton expiré sans refresh token
+     * @throws IOException           si le renouvellement échoue
+     */
+    public String getAccessToken(HttpSession session) throws IOException {
+        TokenSet tokens = (TokenSet) session.getAttribute(SESSION_TOKENS);
+        if (tokens == null) {
+            throw new IllegalStateException("Aucun jeton ProConnect en session");
+        }
+        if (!needsRefresh(tokens)) {
+            return tokens.accessToken();
+        }
+        if (tokens.refreshToken() == null) {
+            if (tokens.expiresAt().isAfter(clock.instant())) {
+                return tokens.accessToken();
+            }
+            throw new IllegalStateException("Jeton d'accès expiré et aucun refresh token disponible");
+        }
+        return refresh(session, tokens).accessToken();
+    }
+
+    private boolean needsRefresh(TokenSet tokens) {
+        return tokens.expiresAt() != null && !clock.instant().plus(refreshAhead).isBefore(tokens.expiresAt());
+    }
+
+    /**
+     * Renouveler les jetons de la session, en partageant l'appel avec les requêtes concurrentes.
+     */
+    private TokenSet refresh(HttpSession session, TokenSet seen) throws IOException {
+        CompletableFuture<TokenSet> mine = new CompletableFuture<>();
+        CompletableFuture<TokenSet> existing = inFlight.putIfAbsent(session.getId(), mine);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw asIOException(e.getCause());
+            }
+        }
+
+        try {
+            // un renouvellement a pu se terminer entre la lecture de la session et l'inscription
+            TokenSet current = (TokenSet) session.getAttribute(SESSION_TOKENS);
+            if (current != null && current != seen && !needsRefresh(current)) {
+                mine.complete(current);
+                return current;
+            }
+            TokenSet refreshed = callTokenEndpoint(current != null ? current : seen);
+            write(session, refreshed);
+            mine.complete(refreshed);
+            return refreshed;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw asIOException(e);
+        } finally {
+            inFlight.remove(session.getId(), mine);
+        }
+    }
+
+    private TokenSet callTokenEndpoint(TokenSet tokens) throws Exception {
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("grant_type", "refresh_token");
+        form.add("refresh_token", tokens.refreshToken());
+        form.add("client_id", Constants.ProConnect.CLIENT_ID);
+        form.add("client_secret", Constants.ProConnect.CLIENT_SECRET);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "failure";
+        try {
+            String body = tokenGuard.call(() -> restTemplate.postForObject(oidcMetadataProvider.current().tokenEndpoint(),
+                    new HttpEntity<>(form, headers), String.class));
+            BodyResponse response = objectMapper.readValue(body, BodyResponse.class);
+            if (response.getAccessToken() == null) {
+                throw new IOException("Réponse de renouvellement sans access_token");
+            }
+            outcome = "success";
+            log.debug("Jeton d'accès renouvelé, expires_in={}", response.getExpiresIn());
+            return TokenSet.from(response, clock.instant(), tokens);
+        } finally {
+            sample.stop(Timer.builder("proconnect.token.refresh")
+                    .description("Renouvellement du jeton d'accès")
+                    .tag("outcome", outcome)
+                    .register(registry));
+        }
+    }
+
+    private static void write(HttpSession session, TokenSet tokens) {
+        session.setAttribute(SESSION_TOKENS, tokens);
+        session.setAttribute(SESSION_ACCESS_TOKEN, tokens.accessToken());
+        session.setAttribute(SESSION_ID_TOKEN, tokens.idToken());
+    }
+
+    private static IOException asIOException(Throwable e) {
+        return e instanceof IOException io ? io : new IOException("Renouvellement du jeton impossible : " + e.getMessage(), e);
+    }
+}
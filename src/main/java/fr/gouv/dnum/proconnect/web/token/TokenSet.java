@@ -0,0 +1,31 @@
+package fr.gouv.dnum.proconnect.web.token;
+
+import fr.gouv.dnum.proconnect.web.response.BodyResponse;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Jetons ProConnect d'une session, avec l'instant d'expiration du jeton d'accès.
+ */
+public record TokenSet(String accessToken, String refreshToken, String idToken, Instant expiresAt) implements Serializable {
+
+    /**
+     * Construire le jeu de jetons issu d'une réponse du token endpoint. Un refresh token ou un
+     * ID token absent de la réponse (cas d'un rafraîchissement) est repris de {@code previous}.
+     */
+    public static TokenSet from(BodyResponse response, Instant now, TokenSet previous) {
+        String refreshToken = response.getRefreshToken() != null ? response.getRefreshToken()
+                : previous != null ? previous.refreshToken() : null;
+        String idToken = response.getIdToken() != null ? response.getIdToken()
+                : previous != null ? previous.idToken() : null;
+        Instant expiresAt = response.getExpiresIn() != null ? now.plusSeconds(response.getExpiresIn()) : null;
+        return new TokenSet(response.getAccessToken(), refreshToken, idToken, expiresAt);
+    }
+
+    @Override
+    public String toString() {
+        // jamais de jeton dans les logs
+        return "TokenSet[expiresAt=" + expiresAt + ", refreshable=" + (refreshToken != null) + "]";
+    }
+}
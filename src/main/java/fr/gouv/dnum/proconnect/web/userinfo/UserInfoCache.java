@@ -0,0 +1,92 @@
+package fr.gouv.dnum.proconnect.web.userinfo;
+
+import fr.gouv.dnum.proconnect.web.cache.BoundedTtlCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Cache des réponses userinfo, indexé par {@code sub}.
+ * <p>
+ * Une entrée vit au plus {@code maxTtl}, et jamais au-delà du {@code expires_in} du jeton d'accès
+ * qui a permis de l'obtenir. Au-delà de {@code maxSize} entrées, les plus anciennes sont évincées.
+ * Une taille maximale de 0 désactive le cache.
+ * <ul>
+ *     <li>{@code proconnect.userinfo.cache{result}} : succès / échecs ({@code hit}, {@code miss})</li>
+ *     <li>{@code proconnect.userinfo.cache.size} : entrées en cache</li>
+ * </ul>
+ */
+public class UserInfoCache {
+
+    private final BoundedTtlCache<String, Map<String, Object>> entries;
+    private final int maxSize;
+    private final long maxTtlMillis;
+    private final Clock clock;
+    private final Counter hits;
+    private final Counter misses;
+
+    public UserInfoCache(int maxSize, Duration maxTtl, Clock clock, MeterRegistry registry) {
+        this.maxSize = maxSize;
+        this.maxTtlMillis = maxTtl.toMillis();
+        this.clock = clock;
+        this.entries = new BoundedTtlCache<>(maxSize, clock);
+        this.hits = Counter.builder("proconnect.userinfo.cache").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("proconnect.userinfo.cache").tag("result", "miss").register(registry);
+        Gauge.builder("proconnect.userinfo.cache.size", entries, BoundedTtlCache::size).register(registry);
+    }
+
+    /**
+     * Cache désactivé : {@link #get(String)} retourne toujours {@code null}.
+     */
+    public static UserInfoCache disabled() {
+        return new UserInfoCache(0, Duration.ZERO, Clock.systemUTC(), new SimpleMeterRegistry());
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Retourner les informations utilisateur en cache, ou {@code null} si absentes ou expirées.
+     */
+    public Map<String, Object> get(String sub) {
+        if (!isEnabled() || sub == null) {
+            return null;
+        }
+        Map<String, Object> userInfo = entries.get(sub);
+        (userInfo != null ? hits : misses).increment();
+        return userInfo;
+    }
+
+    /**
+     * Mettre en cache la réponse userinfo obtenue avec un jeton d'accès valable {@code expiresIn}.
+     */
+    public void put(String sub, Map<String, Object> userInfo, Duration expiresIn) {
+        if (!isEnabled() || sub == null) {
+            return;
+        }
+        long ttl = expiresIn != null ? Math.min(expiresIn.toMillis(), maxTtlMillis) : maxTtlMillis;
+        if (ttl <= 0) {
+            return;
+        }
+        entries.put(sub, Map.copyOf(userInfo), clock.millis() + ttl);
+    }
+
+    /**
+     * Retirer l'utilisateur du cache (déconnexion).
+     */
+    public void invalidate(String sub) {
+        if (sub != null) {
+            entries.remove(sub);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
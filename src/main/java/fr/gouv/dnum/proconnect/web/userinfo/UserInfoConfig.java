@@ -0,0 +1,23 @@
+package fr.gouv.dnum.proconnect.web.userinfo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Configuration du cache userinfo, désactivé par défaut ({@code proconnect.userinfo.cache.max-size=0}).
+ */
+@Configuration
+public class UserInfoConfig {
+
+    @Bean
+    public UserInfoCache userInfoCache(@Value("${proconnect.userinfo.cache.max-size:0}") int maxSize,
+                                       @Value("${proconnect.userinfo.cache.max-ttl:10m}") Duration maxTtl,
+                                       MeterRegistry meterRegistry) {
+        return new UserInfoCache(maxSize, maxTtl, Clock.systemUTC(), meterRegistry);
+    }
+}
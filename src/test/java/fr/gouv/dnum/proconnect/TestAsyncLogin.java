@@ -0,0 +1,93 @@
+package fr.gouv.dnum.proconnect;
+
+import fr.gouv.dnum.proconnect.web.controller.ProConnectAsyncController;
+import fr.gouv.dnum.proconnect.web.audit.LoginAuditLogger;
+import fr.gouv.dnum.proconnect.web.handshake.SessionPendingAuthorizationStore;
+import fr.gouv.dnum.proconnect.web.metrics.LoginMetrics;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadata;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import fr.gouv.dnum.proconnect.web.replay.InMemoryReplayCache;
+import fr.gouv.dnum.proconnect.web.resilience.OutboundGuards;
+import fr.gouv.dnum.proconnect.web.token.TokenRefreshService;
+import fr.gouv.dnum.proconnect.web.userinfo.UserInfoCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class TestAsyncLogin {
+
+    @Mock
+    private HttpServletRequest mockRequest;
+
+    @Mock
+    private HttpSession mockSession;
+
+    private ProConnectAsyncController controller;
+
+    private static final String TEST_STATE = "init-123456689";
+    private static final String TEST_CODE = "test_auth_code";
+    private static final String TEST_ISS = Constants.ProConnect.ENVIRONMENT;
+
+    @BeforeEach
+    void setUp() {
+        OidcMetadataProvider oidcMetadataProvider = OidcMetadataProvider.fixed(OidcMetadata.defaults());
+        controller = new ProConnectAsyncController(
+                HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build(),
+                oidcMetadataProvider, new LoginMetrics(new SimpleMeterRegistry()),
+                new LoginAuditLogger(128, new SimpleMeterRegistry()), new SessionPendingAuthorizationStore(),
+                UserInfoCache.disabled(),
+                new TokenRefreshService(new RestTemplate(), oidcMetadataProvider, new SimpleMeterRegistry(), Duration.ofSeconds(30)),
+                new InMemoryReplayCache(Duration.ofMinutes(10), 10, 1000, Clock.systemUTC(), new SimpleMeterRegistry()),
+                OutboundGuards.defaults(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void testGetProConnectTokenAsync_WithNoSession_ShouldReturnError() throws Exception {
+        when(mockRequest.getSession(false)).thenReturn(null);
+
+        String result = controller.getProConnectTokenAsync(mockRequest, TEST_CODE, TEST_STATE, TEST_ISS).get();
+
+        assertEquals("Erreur", result, "Doit retourner 'Erreur' quand il n'y a pas de session");
+    }
+
+    @Test
+    void testGetProConnectTokenAsync_WithInvalidState_ShouldReturnError() throws Exception {
+        when(mockRequest.getSession(false)).thenReturn(mockSession);
+        when(mockSession.getAttribute("proConnectState")).thenReturn("different_state");
+
+        String result = controller.getProConnectTokenAsync(mockRequest, TEST_CODE, TEST_STATE, TEST_ISS).get();
+
+        assertEquals("Erreur", result, "Doit retourner 'Erreur' quand le state est invalide");
+    }
+
+    @Test
+    void testGetProConnectTokenAsync_WithNetworkError_ShouldReturnError() throws Exception {
+        when(mockRequest.getSession(false)).thenReturn(mockSession);
+        when(mockSession.getAttribute("proConnectState")).thenReturn(TEST_STATE);
+        when(mockSession.getAttribute("proConnectNonce")).thenReturn("b7Rk2pQz9XvLm0Wc4sTe1A");
+
+        String result = controller.getProConnectTokenAsync(mockRequest, TEST_CODE, TEST_STATE, TEST_ISS)
+                .get(30, TimeUnit.SECONDS);
+
+        assertEquals("Erreur", result, "Doit retourner 'Erreur' en cas d'erreur réseau");
+        verify(mockSession, never()).setAttribute(eq("proConnectAccessToken"), any());
+    }
+}
@@ -1,6 +1,17 @@
 package fr.gouv.dnum.proconnect;
 
 import fr.gouv.dnum.proconnect.web.controller.ProConnectController;
+import fr.gouv.dnum.proconnect.web.audit.LoginAuditLogger;
+import fr.gouv.dnum.proconnect.web.handshake.SessionPendingAuthorizationStore;
+import fr.gouv.dnum.proconnect.web.metrics.LoginMetrics;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadata;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import fr.gouv.dnum.proconnect.web.replay.InMemoryReplayCache;
+import fr.gouv.dnum.proconnect.web.resilience.OutboundGuards;
+import fr.gouv.dnum.proconnect.web.session.ProConnectPrincipal;
+import fr.gouv.dnum.proconnect.web.token.TokenRefreshService;
+import fr.gouv.dnum.proconnect.web.userinfo.UserInfoCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
@@ -14,8 +25,11 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.web.client.RestTemplate;
 
 import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -47,7 +61,13 @@ public class TestLogin {
     @BeforeEach
     void setUp() {
         // Utilisation du contrôleur réel sans injection de mocks problématiques
-        proConnectController = new ProConnectController();
+        OidcMetadataProvider oidcMetadataProvider = OidcMetadataProvider.fixed(OidcMetadata.defaults());
+        proConnectController = new ProConnectController(new RestTemplate(), oidcMetadataProvider,
+                new LoginMetrics(new SimpleMeterRegistry()), new LoginAuditLogger(128, new SimpleMeterRegistry()),
+                new SessionPendingAuthorizationStore(), UserInfoCache.disabled(),
+                new TokenRefreshService(new RestTemplate(), oidcMetadataProvider, new SimpleMeterRegistry(), Duration.ofSeconds(30)),
+                new InMemoryReplayCache(Duration.ofMinutes(10), 10, 1000, Clock.systemUTC(), new SimpleMeterRegistry()),
+                OutboundGuards.defaults(new SimpleMeterRegistry()));
     }
 
     @Test
@@ -75,7 +95,7 @@ public class TestLogin {
                 "L'URL doit contenir l'URI de redirection encodée");
 
         // Vérifier que des valeurs sont stockées en session (appels réels)
-        verify(mockSession, atLeastOnce()).setAttribute(eq("proConnectNonce"), any(Long.class));
+        verify(mockSession, atLeastOnce()).setAttribute(eq("proConnectNonce"), any(String.class));
         verify(mockSession, atLeastOnce()).setAttribute(eq("proConnectState"), any(String.class));
     }
 
@@ -126,7 +146,7 @@ public class TestLogin {
         // Arrange - Setup session valide mais réseau inaccessible
         when(mockRequest.getSession(false)).thenReturn(mockSession);
         when(mockSession.getAttribute("proConnectState")).thenReturn(TEST_STATE);
-        when(mockSession.getAttribute("proConnectNonce")).thenReturn(123456789L);
+        when(mockSession.getAttribute("proConnectNonce")).thenReturn("b7Rk2pQz9XvLm0Wc4sTe1A");
 
         // Act - L'appel HTTP échouera naturellement car l'endpoint n'est pas accessible
         String result = proConnectController.getProConnectToken(mockRequest, TEST_CODE, TEST_STATE, TEST_ISS);
@@ -139,10 +159,8 @@ public class TestLogin {
     @Order(6)
     void testDisconnect_WithValidSession_ShouldRedirect() throws IOException {
         // Arrange
-        Long testNonce = 123456789L;
         when(mockRequest.getSession(false)).thenReturn(mockSession);
         when(mockSession.getAttribute("proConnectIdToken")).thenReturn(TEST_ID_TOKEN);
-        when(mockSession.getAttribute("proConnectNonce")).thenReturn(testNonce);
 
         // Act
         proConnectController.disconnect(mockRequest, mockResponse);
@@ -151,7 +169,7 @@ public class TestLogin {
         verify(mockResponse).sendRedirect(argThat(url ->
                 url.contains(Constants.ProConnect.DISCONNECT_ENDPOINT) &&
                         url.contains("id_token_hint=" + TEST_ID_TOKEN) &&
-                        url.contains("state=init-" + (testNonce - 100)) &&
+                        url.matches(".*[?&]state=[A-Za-z0-9_-]{22}(&.*)?") &&
                         url.contains("post_logout_redirect_uri")
         ));
     }
@@ -172,11 +190,9 @@ public class TestLogin {
     @Test
     @Order(8)
     void testDisconnect_WithPartialSessionData_ShouldStillRedirect() throws IOException {
-        // Arrange - Seulement le nonce, pas d'id_token
-        Long testNonce = 987654321L;
+        // Arrange - Session sans id_token
         when(mockRequest.getSession(false)).thenReturn(mockSession);
         when(mockSession.getAttribute("proConnectIdToken")).thenReturn(null);
-        when(mockSession.getAttribute("proConnectNonce")).thenReturn(testNonce);
 
         // Act
         proConnectController.disconnect(mockRequest, mockResponse);
@@ -184,7 +200,7 @@ public class TestLogin {
         // Assert
         verify(mockResponse).sendRedirect(argThat(url ->
                 url.contains(Constants.ProConnect.DISCONNECT_ENDPOINT) &&
-                        url.contains("state=init-" + (testNonce - 100)) &&
+                        url.matches(".*[?&]state=[A-Za-z0-9_-]{22}(&.*)?") &&
                         url.contains("post_logout_redirect_uri") &&
                         !url.contains("id_token_hint") // Pas d'id_token_hint si null
         ));
@@ -287,4 +303,23 @@ public class TestLogin {
         assertTrue(Constants.MyApplication.REDIRECT_URI.startsWith("http"),"REDIRECT_URI doit être une URL HTTP/HTTPS");
     }
 
-}
\ No newline at end of file
+    @Test
+    @Order(14)
+    void testLogout_WithPrincipal_ShouldReturnUserInfo() {
+        // Arrange
+        ProConnectPrincipal principal = new ProConnectPrincipal("user123", TEST_EMAIL, null, "Jean", "Dupont", null);
+
+        when(mockRequest.getSession(false)).thenReturn(mockSession);
+        when(mockSession.getAttribute("proConnectUserInfo")).thenReturn(principal);
+        when(mockSession.getId()).thenReturn("SESSION123");
+
+        // Act
+        String result = proConnectController.logout(mockRequest);
+
+        // Assert
+        assertTrue(result.contains("email : " + TEST_EMAIL), "Doit contenir l'email de l'utilisateur");
+        assertTrue(result.contains("usual_name : Dupont"), "Doit contenir le nom d'usage");
+        assertTrue(result.contains("sub : user123"), "Doit contenir le subject");
+        verify(mockSession).invalidate();
+    }
+}
@@ -0,0 +1,178 @@
+package fr.gouv.dnum.proconnect;
+
+import fr.gouv.dnum.proconnect.stub.LoginFlowClient;
+import fr.gouv.dnum.proconnect.stub.StubProConnectProvider;
+import fr.gouv.dnum.proconnect.stub.StubProConnectProvider.Endpoint;
+import fr.gouv.dnum.proconnect.tomcat.ProConnectApplication;
+import fr.gouv.dnum.proconnect.web.jwt.LocalJwks;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Connexion de bout en bout contre le fournisseur ProConnect local.
+ */
+@SpringBootTest(classes = ProConnectApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class TestLoginFlow {
+
+    private static final StubProConnectProvider PROVIDER = startProvider();
+    private static final HttpClient HTTP_CLIENT = LoginFlowClient.newHttpClient();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private LoginFlowClient browser;
+
+    @DynamicPropertySource
+    static void provider(DynamicPropertyRegistry registry) {
+        registry.add("proconnect.oidc.discovery-uri", () -> PROVIDER.discoveryUri().toString());
+        registry.add("proconnect.resilience.token.timeout", () -> "1s");
+        // plusieurs tests font tourner les clés : pas de limite entre deux re-téléchargements forcés
+        registry.add("proconnect.jwks.min-forced-refresh-interval", () -> "0s");
+        // jetons en session : la déconnexion porte l'id_token_hint
+        registry.add("proconnect.session.store-tokens", () -> "true");
+    }
+
+    @BeforeEach
+    void setUp() {
+        browser = new LoginFlowClient(HTTP_CLIENT, URI.create("http://127.0.0.1:" + port));
+    }
+
+    @AfterEach
+    void tearDown() {
+        PROVIDER.reset();
+    }
+
+    @AfterAll
+    static void stopProvider() {
+        PROVIDER.close();
+        // le magasin installé par le contexte Spring pointe vers le fournisseur local
+        LocalJwks.uninstall();
+    }
+
+    @Test
+    void testLogin_ThenDisconnect_ShouldRedirectToEndSession() throws Exception {
+        String connected = browser.login();
+        URI endSession = browser.disconnect();
+
+        assertTrue(connected.startsWith("[Connecté : stub-user-"), connected);
+        assertTrue(endSession.toString().startsWith(PROVIDER.uri(Endpoint.END_SESSION).toString()));
+        assertTrue(endSession.getRawQuery().contains("id_token_hint="));
+        assertTrue(endSession.getRawQuery().matches(".*(^|&)state=[A-Za-z0-9_-]{22}(&.*)?"), endSession.getRawQuery());
+    }
+
+    @Test
+    void testLogin_WhenCallbackIsReplayed_ShouldBeRejected() throws Exception {
+        URI redirect = browser.authorize(browser.link());
+        browser.callback(redirect);
+
+        IOException e = assertThrows(IOException.class, () -> browser.callback(redirect));
+        assertEquals("Connexion refusée : Erreur", e.getMessage());
+    }
+
+    @Test
+    void testLogin_AfterKeyRotation_ShouldReloadJwks() throws Exception {
+        browser.login();
+        long jwksFetches = PROVIDER.requestCount(Endpoint.JWKS);
+
+        PROVIDER.rotateKeys();
+        new LoginFlowClient(HTTP_CLIENT, URI.create("http://127.0.0.1:" + port)).login();
+
+        assertEquals(jwksFetches + 1, PROVIDER.requestCount(Endpoint.JWKS));
+    }
+
+    @Test
+    void testAsyncLogin_AfterKeyRotation_ShouldReloadJwksAndConnect() throws Exception {
+        browser.login();
+        long jwksFetches = PROVIDER.requestCount(Endpoint.JWKS);
+
+        PROVIDER.rotateKeys();
+        LoginFlowClient other = new LoginFlowClient(HTTP_CLIENT, URI.create("http://127.0.0.1:" + port));
+        URI redirect = other.authorize(other.link());
+        String connected = other.callback(URI.create("/proconnect/valid_code_async?" + redirect.getRawQuery()));
+
+        assertTrue(connected.startsWith("[Connecté : stub-user-"), connected);
+        assertEquals(jwksFetches + 1, PROVIDER.requestCount(Endpoint.JWKS));
+    }
+
+    @Test
+    void testLogin_WhenTokenEndpointFails_ShouldReturnError() {
+        PROVIDER.setErrorRate(Endpoint.TOKEN, 1.0);
+
+        IOException e = assertThrows(IOException.class, () -> browser.login());
+        assertEquals("Connexion refusée : Erreur", e.getMessage());
+    }
+
+    @Test
+    void testLogin_WhenTokenEndpointHangs_ShouldFailFastWithUnavailablePage() {
+        PROVIDER.setLatency(Endpoint.TOKEN, Duration.ofSeconds(4));
+        long start = System.nanoTime();
+
+        IOException e = assertThrows(IOException.class, () -> browser.login());
+
+        assertTrue(e.getMessage().startsWith("HTTP 503"), e.getMessage());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 3_000, "Le callback doit échouer au bout du délai token");
+    }
+
+    @Test
+    void testLogin_WhenIdTokenAndUserInfoBothFail_ShouldReportIdTokenError() {
+        // nouvelle clé et JWKS lent : l'erreur userinfo arrive avant celle de l'ID token
+        PROVIDER.rotateKeys();
+        PROVIDER.setLatency(Endpoint.JWKS, Duration.ofMillis(300));
+        PROVIDER.setErrorRate(Endpoint.USERINFO, 1.0);
+        PROVIDER.setWrongNonce(true);
+        double badNonce = rejected("bad_nonce");
+        double httpError = rejected("http_error");
+
+        assertThrows(IOException.class, () -> browser.login());
+
+        assertEquals(badNonce + 1, rejected("bad_nonce"));
+        assertEquals(httpError, rejected("http_error"));
+    }
+
+    @Test
+    void testLogin_WhenUserInfoSubjectDiffers_ShouldBeRejected() throws Exception {
+        PROVIDER.setWrongUserInfoSubject(true);
+        double badSub = rejected("bad_sub");
+
+        IOException e = assertThrows(IOException.class, () -> browser.login());
+        assertEquals("Connexion refusée : Erreur", e.getMessage());
+
+        LoginFlowClient other = new LoginFlowClient(HTTP_CLIENT, URI.create("http://127.0.0.1:" + port));
+        URI redirect = other.authorize(other.link());
+        e = assertThrows(IOException.class, () -> other.callback(URI.create("/proconnect/valid_code_async?" + redirect.getRawQuery())));
+        assertEquals("Connexion refusée : Erreur", e.getMessage());
+
+        assertEquals(badSub + 2, rejected("bad_sub"));
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("proconnect.login.rejected").tag("reason", reason).counter().count();
+    }
+
+    private static StubProConnectProvider startProvider() {
+        try {
+            return StubProConnectProvider.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package fr.gouv.dnum.proconnect.stub;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Parcours navigateur d'une connexion ProConnect contre l'application :
+ * {@code /proconnect/link}, autorisation auprès du fournisseur, {@code /proconnect/valid_code}
+ * puis {@code /proconnect/disconnect}.
+ * <p>
+ * Une instance représente un navigateur (cookies conservés entre les étapes) ; le client HTTP,
+ * qui ne suit pas les redirections, peut être partagé entre instances.
+ */
+public final class LoginFlowClient {
+
+    private final HttpClient httpClient;
+    private final URI application;
+    private final Map<String, String> cookies = new LinkedHashMap<>();
+
+    public LoginFlowClient(HttpClient httpClient, URI application) {
+        this.httpClient = httpClient;
+        this.application = application;
+    }
+
+    public static HttpClient newHttpClient() {
+        return HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    /**
+     * Enchaîner lien, autorisation et callback.
+     *
+     * @return la réponse du callback ({@code [Connecté : ...]})
+     */
+    public String login() throws IOException, InterruptedException {
+        return callback(authorize(link()));
+    }
+
+    /**
+     * Obtenir le lien de connexion généré par l'application.
+     */
+    public URI link() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(application.resolve("/proconnect/link"), 200);
+        // le lien n'encode pas les espaces du scope : un navigateur le ferait
+        return URI.create(response.body().replace(" ", "%20"));
+    }
+
+    /**
+     * Suivre le lien auprès du fournisseur et retourner la redirection vers le callback.
+     */
+    public URI authorize(URI link) throws IOException, InterruptedException {
+        return location(send(link, 302));
+    }
+
+    /**
+     * Appeler le callback de l'application, quel que soit l'hôte de {@code redirect_uri}.
+     *
+     * @throws IOException si la connexion est refusée
+     */
+    public String callback(URI redirect) throws IOException, InterruptedException {
+        String body = send(application.resolve(redirect.getRawPath() + "?" + redirect.getRawQuery()), 200).body();
+        if (!body.startsWith("[Connecté")) {
+            throw new IOException("Connexion refusée : " + body);
+        }
+        return body;
+    }
+
+    /**
+     * Déconnexion ; retourne la redirection vers le endpoint de fin de session du fournisseur.
+     */
+    public URI disconnect() throws IOException, InterruptedException {
+        return location(send(application.resolve("/proconnect/disconnect"), 302));
+    }
+
+    private HttpResponse<String> send(URI uri, int expectedStatus) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET();
+        if (!cookies.isEmpty() && uri.getPort() == application.getPort()) {
+            request.header("Cookie", cookies.entrySet().stream()
+                    .map(cookie -> cookie.getKey() + "=" + cookie.getValue())
+                    .collect(Collectors.joining("; ")));
+        }
+        HttpResponse<String> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        for (String setCookie : response.headers().allValues("Set-Cookie")) {
+            String pair = setCookie.split(";", 2)[0];
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                cookies.put(pair.substring(0, separator).trim(), pair.substring(separator + 1).trim());
+            }
+        }
+        if (response.statusCode() != expectedStatus) {
+            throw new IOException("HTTP " + response.statusCode() + " sur " + uri.getPath());
+        }
+        return response;
+    }
+
+    private static URI location(HttpResponse<?> response) throws IOException {
+        return URI.create(response.headers().firstValue("Location")
+                .orElseThrow(() -> new IOException("Redirection sans Location : " + response.uri().getPath())));
+    }
+}
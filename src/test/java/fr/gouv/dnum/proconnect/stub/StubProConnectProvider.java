@@ -0,0 +1,484 @@
+package fr.gouv.dnum.proconnect.stub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fournisseur ProConnect local, pour les tests de bout en bout et les tirs de charge.
+ * <p>
+ * Expose sous {@code /api/v2} le document de découverte, l'autorisation (redirection immédiate
+ * vers {@code redirect_uri} avec un code), le token endpoint (codes d'autorisation et refresh
+ * tokens), userinfo (JWT ES256) et le JWKS. Les clés de signature peuvent être renouvelées
+ * ({@link #rotateKeys()}) : le JWKS publie la clé courante et la précédente.
+ * <p>
+ * Une latence et un taux d'erreur (réponse 500) peuvent être injectés par endpoint.
+ */
+@Slf4j
+public class StubProConnectProvider implements AutoCloseable {
+
+    public static final String API_PATH = "/api/v2";
+    public static final String SIRET = "21340126800130";
+
+    public enum Endpoint {
+        DISCOVERY("/.well-known/openid-configuration"),
+        AUTHORIZE("/authorize"),
+        TOKEN("/token"),
+        USERINFO("/userinfo"),
+        JWKS("/jwks"),
+        END_SESSION("/session/end");
+
+        private final String path;
+
+        Endpoint(String path) {
+            this.path = API_PATH + path;
+        }
+
+        public String path() {
+            return path;
+        }
+    }
+
+    private record SigningKey(String kid, KeyPair keyPair) {
+    }
+
+    private record Grant(String clientId, String nonce, String subject) {
+    }
+
+    private static final Duration ACCESS_TOKEN_LIFETIME = Duration.ofMinutes(1);
+    private static final Duration ID_TOKEN_LIFETIME = Duration.ofMinutes(5);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final HttpServer server;
+    private final String baseUrl;
+    private final int users;
+
+    private final Map<Endpoint, Duration> latencies = new ConcurrentHashMap<>();
+    private final Map<Endpoint, Double> errorRates = new ConcurrentHashMap<>();
+    private final Map<Endpoint, LongAdder> requests = new EnumMap<>(Endpoint.class);
+    // codes d'autorisation émis et non encore échangés
+    private final Map<String, Grant> codes = new ConcurrentHashMap<>();
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong keyGeneration = new AtomicLong();
+
+    private volatile SigningKey currentKey;
+    private volatile SigningKey previousKey;
+    private volatile byte[] jwks;
+    private volatile boolean wrongNonce;
+    private volatile boolean wrongUserInfoSubject;
+
+    private StubProConnectProvider(HttpServer server, int users) {
+        this.server = server;
+        this.baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        this.users = users;
+        for (Endpoint endpoint : Endpoint.values()) {
+            requests.put(endpoint, new LongAdder());
+        }
+        rotateKeys();
+
+        handle(Endpoint.DISCOVERY, this::discovery);
+        handle(Endpoint.AUTHORIZE, this::authorize);
+        handle(Endpoint.TOKEN, this::token);
+        handle(Endpoint.USERINFO, this::userinfo);
+        handle(Endpoint.JWKS, exchange -> send(exchange, 200, "application/json", jwks));
+        handle(Endpoint.END_SESSION, this::endSession);
+    }
+
+    /**
+     * Démarrer un fournisseur sur un port libre de la boucle locale, avec 1000 utilisateurs.
+     */
+    public static StubProConnectProvider start() throws IOException {
+        return start(1000);
+    }
+
+    /**
+     * Démarrer un fournisseur dont les connexions successives se répartissent sur {@code users}
+     * utilisateurs distincts (sub, email).
+     */
+    public static StubProConnectProvider start(int users) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 8192);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        StubProConnectProvider provider = new StubProConnectProvider(server, users);
+        server.start();
+        log.info("Fournisseur ProConnect local démarré sur {}", provider.baseUrl);
+        return provider;
+    }
+
+    public String issuer() {
+        return baseUrl + API_PATH;
+    }
+
+    public URI discoveryUri() {
+        return uri(Endpoint.DISCOVERY);
+    }
+
+    public URI uri(Endpoint endpoint) {
+        return URI.create(baseUrl + endpoint.path());
+    }
+
+    /**
+     * Générer une nouvelle clé de signature ; la clé précédente reste publiée dans le JWKS.
+     */
+    public synchronized void rotateKeys() {
+        previousKey = currentKey;
+        currentKey = new SigningKey("stub-es256-" + keyGeneration.incrementAndGet(), generateKeyPair());
+        List<Map<String, String>> keys = new ArrayList<>();
+        keys.add(toJwk(currentKey));
+        if (previousKey != null) {
+            keys.add(toJwk(previousKey));
+        }
+        jwks = json(Map.of("keys", keys));
+    }
+
+    public String currentKid() {
+        return currentKey.kid();
+    }
+
+    /**
+     * Latence ajoutée avant chaque réponse de tous les endpoints.
+     */
+    public void setLatency(Duration latency) {
+        for (Endpoint endpoint : Endpoint.values()) {
+            setLatency(endpoint, latency);
+        }
+    }
+
+    public void setLatency(Endpoint endpoint, Duration latency) {
+        latencies.put(endpoint, latency);
+    }
+
+    /**
+     * Proportion (entre 0 et 1) des requêtes de l'endpoint recevant une erreur 500.
+     */
+    public void setErrorRate(Endpoint endpoint, double errorRate) {
+        errorRates.put(endpoint, errorRate);
+    }
+
+    /**
+     * Émettre des ID tokens dont le nonce ne correspond pas à celui de la demande d'autorisation.
+     */
+    public void setWrongNonce(boolean wrongNonce) {
+        this.wrongNonce = wrongNonce;
+    }
+
+    /**
+     * Émettre des réponses userinfo dont le sub diffère de celui de l'ID token.
+     */
+    public void setWrongUserInfoSubject(boolean wrongUserInfoSubject) {
+        this.wrongUserInfoSubject = wrongUserInfoSubject;
+    }
+
+    /**
+     * Retirer toute latence, erreur et anomalie injectée.
+     */
+    public void reset() {
+        latencies.clear();
+        errorRates.clear();
+        wrongNonce = false;
+        wrongUserInfoSubject = false;
+    }
+
+    public long requestCount(Endpoint endpoint) {
+        return requests.get(endpoint).sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(Endpoint endpoint, Handler handler) {
+        server.createContext(endpoint.path(), exchange -> {
+            try {
+                requests.get(endpoint).increment();
+                Duration latency = latencies.get(endpoint);
+                if (latency != null && !latency.isZero()) {
+                    Thread.sleep(latency);
+                }
+                double errorRate = errorRates.getOrDefault(endpoint, 0.0);
+                if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    sendError(exchange, 500, "server_error");
+                } else {
+                    handler.handle(exchange);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("Erreur du fournisseur local sur {} : {}", endpoint.path(), e.toString());
+                sendError(exchange, 500, "server_error");
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    private void discovery(HttpExchange exchange) throws IOException {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("issuer", issuer());
+        metadata.put("authorization_endpoint", uri(Endpoint.AUTHORIZE).toString());
+        metadata.put("token_endpoint", uri(Endpoint.TOKEN).toString());
+        metadata.put("userinfo_endpoint", uri(Endpoint.USERINFO).toString());
+        metadata.put("end_session_endpoint", uri(Endpoint.END_SESSION).toString());
+        metadata.put("jwks_uri", uri(Endpoint.JWKS).toString());
+        metadata.put("id_token_signing_alg_values_supported", List.of("ES256"));
+        metadata.put("userinfo_signing_alg_values_supported", List.of("ES256"));
+        send(exchange, 200, "application/json", json(metadata));
+    }
+
+    /**
+     * Authentification immédiate : redirection vers {@code redirect_uri} avec code, state et iss.
+     */
+    private void authorize(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parameters(exchange.getRequestURI().getRawQuery());
+        String redirectUri = query.get("redirect_uri");
+        if (redirectUri == null || query.get("client_id") == null || !"code".equals(query.get("response_type"))) {
+            sendError(exchange, 400, "invalid_request");
+            return;
+        }
+        String subject = "stub-user-" + Math.floorMod(logins.getAndIncrement(), users);
+        String code = randomToken();
+        codes.put(code, new Grant(query.get("client_id"), query.get("nonce"), subject));
+
+        String location = redirectUri + (redirectUri.contains("?") ? "&" : "?")
+                + "code=" + encode(code)
+                + (query.containsKey("state") ? "&state=" + encode(query.get("state")) : "")
+                + "&iss=" + encode(issuer());
+        exchange.getResponseHeaders().set("Location", location);
+        exchange.sendResponseHeaders(302, -1);
+    }
+
+    private void token(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "invalid_request");
+            return;
+        }
+        Map<String, String> form = parameters(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        Grant grant;
+        if ("authorization_code".equals(form.get("grant_type"))) {
+            String code = form.get("code");
+            grant = code != null ? codes.remove(code) : null;
+        } else if ("refresh_token".equals(form.get("grant_type"))) {
+            grant = fromRefreshToken(form.get("refresh_token"));
+        } else {
+            sendError(exchange, 400, "unsupported_grant_type");
+            return;
+        }
+        if (grant == null) {
+            sendError(exchange, 400, "invalid_grant");
+            return;
+        }
+
+        JwtBuilder idToken = signed()
+                .audience().add(grant.clientId()).and()
+                .subject(grant.subject())
+                .expiration(new Date(System.currentTimeMillis() + ID_TOKEN_LIFETIME.toMillis()));
+        if (grant.nonce() != null) {
+            idToken.claim("nonce", wrongNonce ? grant.nonce() + "0" : grant.nonce());
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("access_token", "at." + base64Url(grant.subject()) + "." + randomToken());
+        response.put("token_type", "Bearer");
+        response.put("expires_in", ACCESS_TOKEN_LIFETIME.toSeconds());
+        response.put("id_token", idToken.compact());
+        response.put("refresh_token", "rt." + base64Url(grant.clientId() + "\n" + grant.subject()) + "." + randomToken());
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        send(exchange, 200, "application/json", json(response));
+    }
+
+    /**
+     * Réponse userinfo signée (application/jwt) pour le sub porté par le jeton d'accès.
+     */
+    private void userinfo(HttpExchange exchange) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        String subject = authorization != null && authorization.startsWith("Bearer ")
+                ? subjectOf(authorization.substring("Bearer ".length()), "at.")
+                : null;
+        if (subject == null) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer error=\"invalid_token\"");
+            sendError(exchange, 401, "invalid_token");
+            return;
+        }
+        String userinfo = signed()
+                .subject(wrongUserInfoSubject ? subject + "-autre" : subject)
+                .claim("email", subject + "@stub.proconnect.local")
+                .claim("given_name", "Agent")
+                .claim("usual_name", subject)
+                .claim("siret", SIRET)
+                .compact();
+        send(exchange, 200, "application/jwt", userinfo.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void endSession(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parameters(exchange.getRequestURI().getRawQuery());
+        String redirectUri = query.get("post_logout_redirect_uri");
+        if (redirectUri == null) {
+            send(exchange, 200, "text/plain", "Déconnecté".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        String location = redirectUri
+                + (query.containsKey("state") ? (redirectUri.contains("?") ? "&" : "?") + "state=" + encode(query.get("state")) : "");
+        exchange.getResponseHeaders().set("Location", location);
+        exchange.sendResponseHeaders(302, -1);
+    }
+
+    private JwtBuilder signed() {
+        SigningKey key = currentKey;
+        return Jwts.builder()
+                .header().keyId(key.kid()).and()
+                .issuer(issuer())
+                .issuedAt(new Date())
+                .signWith(key.keyPair().getPrivate(), Jwts.SIG.ES256);
+    }
+
+    private static Grant fromRefreshToken(String refreshToken) {
+        String payload = subjectOf(refreshToken, "rt.");
+        if (payload == null || !payload.contains("\n")) {
+            return null;
+        }
+        String[] parts = payload.split("\n", 2);
+        return new Grant(parts[0], null, parts[1]);
+    }
+
+    /**
+     * Lire la partie centrale d'un jeton opaque {@code prefix.<base64url>.<aléa>}.
+     */
+    private static String subjectOf(String token, String prefix) {
+        if (token == null || !token.startsWith(prefix)) {
+            return null;
+        }
+        int end = token.indexOf('.', prefix.length());
+        if (end < 0) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(token.substring(prefix.length(), end)), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> toJwk(SigningKey key) {
+        ECPublicKey publicKey = (ECPublicKey) key.keyPair().getPublic();
+        Map<String, String> jwk = new LinkedHashMap<>();
+        jwk.put("kty", "EC");
+        jwk.put("use", "sig");
+        jwk.put("alg", "ES256");
+        jwk.put("kid", key.kid());
+        jwk.put("crv", "P-256");
+        jwk.put("x", base64Url(publicKey.getW().getAffineX(), 32));
+        jwk.put("y", base64Url(publicKey.getW().getAffineY(), 32));
+        return jwk;
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String randomToken() {
+        byte[] bytes = new byte[24];
+        secureRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private byte[] json(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String error) {
+        try {
+            send(exchange, status, "application/json", json(Map.of("error", error)));
+        } catch (IOException e) {
+            log.debug("Réponse d'erreur non envoyée : {}", e.getMessage());
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static Map<String, String> parameters(String raw) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : raw.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String base64Url(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String base64Url(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (bytes.length < length) {
+            byte[] padded = new byte[length];
+            System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+            bytes = padded;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
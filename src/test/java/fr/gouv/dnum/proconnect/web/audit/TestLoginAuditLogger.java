@@ -0,0 +1,65 @@
+package fr.gouv.dnum.proconnect.web.audit;
+
+import fr.gouv.dnum.proconnect.web.metrics.LoginMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLoginAuditLogger {
+
+    private static final String ACCESS_TOKEN = "eyJhbGciOiJFUzI1NiJ9.access.signature";
+    private static final String ID_TOKEN = "eyJhbGciOiJFUzI1NiJ9.id.signature";
+
+    @Test
+    void testPublish_ShouldWriteOneRedactedJsonLinePerLogin() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        LoginAuditLogger auditLogger = new LoginAuditLogger(16, new SimpleMeterRegistry(), lines::add);
+
+        auditLogger.publish(LoginAuditEvent.success("sub-1", "user@example.com", "12345678901234",
+                "https://idp", 42, ACCESS_TOKEN, ID_TOKEN));
+        auditLogger.publish(LoginAuditEvent.failure(LoginMetrics.Rejection.BAD_NONCE, "https://idp", 7));
+        auditLogger.close();
+
+        assertEquals(2, lines.size());
+        String success = lines.get(0);
+        assertTrue(success.contains("\"outcome\":\"success\""));
+        assertTrue(success.contains("\"subject\":\"sub-1\""));
+        assertTrue(success.contains("\"accessTokenFingerprint\":\"sha256:"));
+        assertFalse(success.contains(ACCESS_TOKEN), "Le jeton d'accès ne doit pas apparaître en clair");
+        assertFalse(success.contains(ID_TOKEN), "L'ID token ne doit pas apparaître en clair");
+        assertTrue(lines.get(1).contains("\"reason\":\"bad_nonce\""));
+    }
+
+    @Test
+    void testPublish_WhenQueueIsFull_ShouldDropWithoutBlocking() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LoginAuditLogger auditLogger = new LoginAuditLogger(1, registry, line -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        LoginAuditEvent event = LoginAuditEvent.failure(LoginMetrics.Rejection.ERROR, null, 0);
+        assertTrue(auditLogger.publish(event));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        // le thread d'écriture est occupé : une place en file, puis rejet
+        assertTrue(auditLogger.publish(event));
+        assertFalse(auditLogger.publish(event));
+
+        assertEquals(1.0, registry.get("proconnect.audit.events").tag("result", "dropped").counter().count());
+        assertEquals(2.0, registry.get("proconnect.audit.events").tag("result", "published").counter().count());
+        release.countDown();
+        auditLogger.close();
+    }
+}
@@ -0,0 +1,147 @@
+package fr.gouv.dnum.proconnect.web.bearer;
+
+import fr.gouv.dnum.proconnect.Constants;
+import fr.gouv.dnum.proconnect.web.jwt.LocalJwks;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadata;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.security.KeyPair;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBearerTokenFilter {
+
+    private static final String KID = "test-bearer-es256";
+    private static final String RSA_KID = "test-bearer-rs256";
+
+    private static KeyPair keyPair;
+    private static KeyPair rsaKeyPair;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final BearerTokenFilter filter = new BearerTokenFilter(
+            new VerifiedTokenCache(100, Duration.ofMinutes(5), Clock.systemUTC(), registry),
+            OidcMetadataProvider.fixed(OidcMetadata.defaults()));
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        LocalJwks jwks = new LocalJwks().ec(KID).rsa(RSA_KID);
+        keyPair = jwks.keyPair(KID);
+        rsaKeyPair = jwks.keyPair(RSA_KID);
+        jwks.install();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        LocalJwks.uninstall();
+    }
+
+    @Test
+    void testFilter_WithValidToken_ShouldExposeClaimsAndVerifyOnce() throws Exception {
+        String token = token(Constants.ProConnect.CLIENT_ID);
+
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest request = apiRequest("Bearer " + token);
+            MockFilterChain chain = new MockFilterChain();
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+            assertNotNull(chain.getRequest(), "La requête doit atteindre l'API");
+            assertEquals("user123", ((Claims) request.getAttribute(BearerTokenFilter.CLAIMS_ATTRIBUTE)).getSubject());
+        }
+        assertEquals(1.0, registry.get("proconnect.bearer.cache").tag("result", "miss").counter().count());
+        assertEquals(2.0, registry.get("proconnect.bearer.cache").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void testFilter_WithoutToken_ShouldReturnUnauthorized() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(apiRequest(null), response, chain);
+
+        assertEquals(401, response.getStatus());
+        assertEquals("Bearer", response.getHeader("WWW-Authenticate"));
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void testFilter_WithOtherAudience_ShouldRejectWithoutCaching() throws Exception {
+        String token = token("autre-client");
+
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(apiRequest("Bearer " + token), response, new MockFilterChain());
+
+            assertEquals(401, response.getStatus());
+            assertEquals("Bearer error=\"invalid_token\"", response.getHeader("WWW-Authenticate"));
+        }
+        assertEquals(2.0, registry.get("proconnect.bearer.cache").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testFilter_WithAlgorithmNotAnnounced_ShouldReject() throws Exception {
+        // clé présente dans le JWKS, mais la découverte n'annonce que ES256
+        String token = token(Constants.ProConnect.CLIENT_ID, RSA_KID, rsaKeyPair);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(apiRequest("Bearer " + token), response, chain);
+
+        assertEquals(401, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void testCache_ShouldKeepEntriesUntilExpAndWithinCapacity() {
+        Instant now = Instant.parse("2025-01-01T10:00:00Z");
+        VerifiedTokenCache cache = new VerifiedTokenCache(2, Duration.ofMinutes(5),
+                Clock.fixed(now, ZoneOffset.UTC), new SimpleMeterRegistry());
+        Claims expired = Jwts.claims().expiration(Date.from(now.minusSeconds(1))).build();
+        Claims valid = Jwts.claims().expiration(Date.from(now.plusSeconds(60))).build();
+
+        cache.put("expired", expired);
+        cache.put("a", valid);
+        cache.put("b", valid);
+        cache.put("c", valid);
+
+        assertNull(cache.get("expired"));
+        assertNull(cache.get("a"), "La plus ancienne entrée doit être évincée");
+        assertSame(valid, cache.get("c"));
+        assertEquals(2, cache.size());
+    }
+
+    private static MockHttpServletRequest apiRequest(String authorization) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/dossiers");
+        if (authorization != null) {
+            request.addHeader("Authorization", authorization);
+        }
+        return request;
+    }
+
+    private static String token(String audience) {
+        return token(audience, KID, keyPair);
+    }
+
+    private static String token(String audience, String kid, KeyPair signingKey) {
+        return Jwts.builder()
+                .header().keyId(kid).and()
+                .issuer(Constants.ProConnect.ENVIRONMENT + "/api/v2")
+                .audience().add(audience).and()
+                .subject("user123")
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(signingKey.getPrivate())
+                .compact();
+    }
+}
@@ -0,0 +1,90 @@
+package fr.gouv.dnum.proconnect.web.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBoundedTtlCache {
+
+    private final MutableClock clock = new MutableClock();
+    private final List<BoundedTtlCache.Eviction> evictions = new ArrayList<>();
+    private final BoundedTtlCache<String, String> cache = new BoundedTtlCache<>(2, clock, evictions::add);
+
+    @Test
+    void testGet_WhenExpired_ShouldReturnNullButPeekShouldNot() {
+        cache.put("a", "1", clock.millis() + 1_000);
+        assertEquals("1", cache.get("a"));
+
+        clock.advance(Duration.ofSeconds(1));
+        assertEquals("1", cache.peek("a"));
+        assertNull(cache.get("a"));
+        assertNull(cache.peek("a"));
+        assertEquals(List.of(BoundedTtlCache.Eviction.EXPIRED), evictions);
+    }
+
+    @Test
+    void testPut_ShouldEvictExpiredThenOldestEntries() {
+        cache.put("a", "1", clock.millis() + 1_000);
+        clock.advance(Duration.ofSeconds(2));
+        cache.put("b", "2", clock.millis() + 60_000);
+        cache.put("c", "3", clock.millis() + 60_000);
+        cache.put("d", "4", clock.millis() + 60_000);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("4", cache.get("d"));
+        assertEquals(List.of(BoundedTtlCache.Eviction.EXPIRED, BoundedTtlCache.Eviction.CAPACITY), evictions);
+    }
+
+    @Test
+    void testPut_WhenReplaced_ShouldNotEvictNewValueWithOldOne() {
+        cache.put("a", "1", clock.millis() + 60_000);
+        cache.put("a", "2", clock.millis() + 60_000);
+        cache.put("b", "3", clock.millis() + 60_000);
+
+        // l'ancienne valeur de "a" quitte la file sans retirer la nouvelle
+        assertEquals("2", cache.get("a"));
+        assertEquals(2, cache.size());
+        assertTrue(evictions.isEmpty());
+    }
+
+    @Test
+    void testRemove_ShouldOnlyRemoveSameInstance() {
+        String value = new String("1");
+        cache.put("a", value, clock.millis() + 60_000);
+
+        assertFalse(cache.remove("a", new String("1")));
+        assertTrue(cache.remove("a", value));
+        assertFalse(cache.remove("a", value));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package fr.gouv.dnum.proconnect.web.handshake;
+
+import fr.gouv.dnum.proconnect.web.replay.InMemoryReplayCache;
+import fr.gouv.dnum.proconnect.web.replay.ReplayCacheFullException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCookiePendingAuthorizationStore {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T10:00:00Z");
+    private static final Duration TTL = Duration.ofMinutes(5);
+    private static final PendingAuthorization PENDING = new PendingAuthorization("init-123456689", "b7Rk2pQz9XvLm0Wc4sTe1A");
+
+    private final SecretKey key = generateKey();
+    private final CookiePendingAuthorizationStore store = storeAt(NOW);
+
+    @Test
+    void testConsume_ShouldReturnSavedAuthorizationWithoutSession() {
+        MockHttpServletRequest request = callbackRequest(save(store));
+
+        PendingAuthorization consumed = store.consume(PENDING.state(), request, new MockHttpServletResponse());
+
+        assertEquals(PENDING, consumed);
+        assertNull(request.getSession(false), "Aucune session ne doit être créée");
+    }
+
+    @Test
+    void testComplete_WhenReplayed_ShouldBeRejected() {
+        String cookie = save(store);
+        store.complete(store.consume(PENDING.state(), callbackRequest(cookie), null));
+
+        PendingAuthorization replayed = store.consume(PENDING.state(), callbackRequest(cookie), null);
+        SecurityException e = assertThrows(SecurityException.class, () -> store.complete(replayed));
+        assertEquals("handshake replayed", e.getMessage());
+    }
+
+    @Test
+    void testConsume_WithoutCompletion_ShouldNotFillReplayCache() {
+        Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+        // une seule valeur par tranche
+        CookiePendingAuthorizationStore small = new CookiePendingAuthorizationStore(key, TTL, true, clock,
+                new InMemoryReplayCache(TTL.multipliedBy(2), 10, 10, clock, new SimpleMeterRegistry()));
+        String cookie = save(small);
+        for (int i = 0; i < 5; i++) {
+            // callbacks forgés : le code n'est jamais échangé
+            small.consume(PENDING.state(), callbackRequest(cookie), null);
+        }
+
+        small.complete(small.consume(PENDING.state(), callbackRequest(cookie), null));
+
+        PendingAuthorization other = new PendingAuthorization("init-autre", "b7Rk2pQz9XvLm0Wc4sTe1B");
+        assertThrows(ReplayCacheFullException.class, () -> small.complete(other));
+    }
+
+    @Test
+    void testConsume_WhenExpired_ShouldBeRejected() {
+        String cookie = save(store);
+
+        SecurityException e = assertThrows(SecurityException.class,
+                () -> storeAt(NOW.plus(TTL)).consume(PENDING.state(), callbackRequest(cookie), null));
+        assertEquals("handshake expired", e.getMessage());
+    }
+
+    @Test
+    void testConsume_WithOtherStateOrTamperedCookie_ShouldBeRejected() {
+        String cookie = save(store);
+        int middle = cookie.length() / 2;
+        String tampered = cookie.substring(0, middle) + (cookie.charAt(middle) == 'A' ? 'B' : 'A') + cookie.substring(middle + 1);
+
+        assertEquals("bad state", assertThrows(SecurityException.class,
+                () -> store.consume("init-autre", callbackRequest(cookie), null)).getMessage());
+        assertEquals("bad state", assertThrows(SecurityException.class,
+                () -> store.consume(PENDING.state(), callbackRequest(tampered), null)).getMessage());
+        assertEquals("no session", assertThrows(SecurityException.class,
+                () -> store.consume(PENDING.state(), new MockHttpServletRequest(), null)).getMessage());
+    }
+
+    private CookiePendingAuthorizationStore storeAt(Instant instant) {
+        Clock clock = Clock.fixed(instant, ZoneOffset.UTC);
+        return new CookiePendingAuthorizationStore(key, TTL, true, clock,
+                new InMemoryReplayCache(TTL.multipliedBy(2), 10, 1000, clock, new SimpleMeterRegistry()));
+    }
+
+    private static String save(CookiePendingAuthorizationStore store) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        store.save(PENDING, new MockHttpServletRequest(), response);
+        String header = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertNotNull(header);
+        assertTrue(header.contains("HttpOnly") && header.contains("Secure") && header.contains("SameSite=Lax"));
+        return header.substring(header.indexOf('=') + 1, header.indexOf(';'));
+    }
+
+    private static MockHttpServletRequest callbackRequest(String cookie) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie(CookiePendingAuthorizationStore.COOKIE_NAME, cookie));
+        return request;
+    }
+
+    private static SecretKey generateKey() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256);
+            return generator.generateKey();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package fr.gouv.dnum.proconnect.web.handshake;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestInMemoryPendingAuthorizationStore {
+
+    private final MutableClock clock = new MutableClock();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final InMemoryPendingAuthorizationStore store =
+            new InMemoryPendingAuthorizationStore(3, Duration.ofMinutes(5), true, clock, registry);
+
+    @Test
+    void testConsume_ShouldReturnEntryOnlyOnce() {
+        MockHttpServletRequest browser = save("init-1", "n101", null);
+
+        assertEquals(new PendingAuthorization("init-1", "n101"), store.consume("init-1", browser, null));
+        assertEquals("bad state", assertThrows(SecurityException.class, () -> store.consume("init-1", browser, null)).getMessage());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testConsume_FromAnotherBrowser_ShouldBeRejectedWithoutConsumingEntry() {
+        MockHttpServletRequest victim = save("init-1", "n101", null);
+        MockHttpServletRequest attacker = save("init-2", "n102", null);
+
+        assertEquals("no session", assertThrows(SecurityException.class,
+                () -> store.consume("init-1", new MockHttpServletRequest(), null)).getMessage());
+        assertEquals("bad state", assertThrows(SecurityException.class,
+                () -> store.consume("init-1", attacker, null)).getMessage());
+        assertEquals("n101", store.consume("init-1", victim, null).nonce());
+    }
+
+    @Test
+    void testSave_ShouldReuseBrowserCookieForSeveralTabs() {
+        MockHttpServletRequest browser = save("init-1", "n101", null);
+        MockHttpServletResponse secondTab = new MockHttpServletResponse();
+        store.save(new PendingAuthorization("init-2", "n102"), browser, secondTab);
+
+        Cookie cookie = secondTab.getCookie(InMemoryPendingAuthorizationStore.COOKIE_NAME);
+        assertEquals(browser.getCookies()[0].getValue(), cookie.getValue());
+        assertTrue(cookie.isHttpOnly());
+        assertTrue(cookie.getSecure());
+        assertEquals("n101", store.consume("init-1", browser, null).nonce());
+        assertEquals("n102", store.consume("init-2", browser, null).nonce());
+    }
+
+    @Test
+    void testConsume_WhenExpired_ShouldBeRejected() {
+        MockHttpServletRequest browser = save("init-1", "n101", null);
+        clock.advance(Duration.ofMinutes(5));
+
+        assertEquals("handshake expired", assertThrows(SecurityException.class, () -> store.consume("init-1", browser, null)).getMessage());
+        assertEquals(1.0, registry.get("proconnect.handshake.evictions").tag("cause", "expired").counter().count());
+    }
+
+    @Test
+    void testSave_ShouldEvictExpiredThenOldestEntries() {
+        MockHttpServletRequest browser = save("init-1", "n101", null);
+        clock.advance(Duration.ofMinutes(6));
+        save("init-2", "n102", browser);
+        assertEquals(1, store.size());
+
+        save("init-3", "n103", browser);
+        save("init-4", "n104", browser);
+        save("init-5", "n105", browser);
+
+        assertEquals(3, store.size());
+        assertThrows(SecurityException.class, () -> store.consume("init-2", browser, null));
+        assertEquals("n105", store.consume("init-5", browser, null).nonce());
+        assertEquals(1.0, registry.get("proconnect.handshake.evictions").tag("cause", "expired").counter().count());
+        assertEquals(1.0, registry.get("proconnect.handshake.evictions").tag("cause", "capacity").counter().count());
+        assertEquals(2.0, registry.get("proconnect.handshake.pending").gauge().value());
+    }
+
+    /**
+     * Demander un lien depuis {@code browser} (nouveau navigateur si {@code null}) et retourner
+     * la requête du navigateur, avec le cookie reçu.
+     */
+    private MockHttpServletRequest save(String state, String nonce, MockHttpServletRequest browser) {
+        MockHttpServletRequest request = browser != null ? browser : new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        store.save(new PendingAuthorization(state, nonce), request, response);
+        request.setCookies(response.getCookie(InMemoryPendingAuthorizationStore.COOKIE_NAME));
+        return request;
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
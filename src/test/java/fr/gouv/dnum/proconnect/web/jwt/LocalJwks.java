@@ -0,0 +1,155 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import fr.gouv.dnum.proconnect.Constants;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JWKS local des tests : génère les paires de clés, publie leurs clés publiques et les installe
+ * dans {@link JwtUtils}, sans appel réseau.
+ */
+public final class LocalJwks {
+
+    private final Map<String, KeyPair> keyPairs = new HashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    /**
+     * Ajouter une clé EC P-256 sans champ {@code alg}.
+     */
+    public LocalJwks ec(String kid) throws GeneralSecurityException {
+        return ec(kid, "secp256r1", "P-256", 32, null);
+    }
+
+    /**
+     * Ajouter une clé EC sur la courbe de {@code algorithm}, réservée à cet algorithme par son champ {@code alg}.
+     */
+    public LocalJwks ec(String kid, JwtAlgorithmEnum algorithm) throws GeneralSecurityException {
+        return switch (algorithm) {
+            case ES256 -> ec(kid, "secp256r1", "P-256", 32, algorithm);
+            case ES384 -> ec(kid, "secp384r1", "P-384", 48, algorithm);
+            case ES512 -> ec(kid, "secp521r1", "P-521", 66, algorithm);
+            default -> throw new IllegalArgumentException("Algorithme non EC : " + algorithm);
+        };
+    }
+
+    /**
+     * Ajouter une clé RSA 2048 bits sans champ {@code alg} (RS256 et PS256).
+     */
+    public LocalJwks rsa(String kid) throws GeneralSecurityException {
+        return rsa(kid, 2048);
+    }
+
+    /**
+     * Ajouter une clé RSA de {@code bits} bits sans champ {@code alg}.
+     */
+    public LocalJwks rsa(String kid, int bits) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(bits);
+        KeyPair keyPair = generator.generateKeyPair();
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        return add(kid, keyPair, "{\"kty\":\"RSA\",\"kid\":\"" + kid + "\","
+                + "\"n\":\"" + base64Url(publicKey.getModulus(), bits / 8) + "\","
+                + "\"e\":\"" + base64Url(publicKey.getPublicExponent(), 3) + "\"}");
+    }
+
+    /**
+     * Ajouter une clé Ed25519 ({@code alg} EdDSA).
+     */
+    public LocalJwks ed25519(String kid) throws GeneralSecurityException {
+        KeyPair keyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        // la clé publique brute occupe les 32 derniers octets de l'encodage X.509
+        byte[] encoded = keyPair.getPublic().getEncoded();
+        return add(kid, keyPair, "{\"kty\":\"OKP\",\"kid\":\"" + kid + "\",\"alg\":\"EdDSA\",\"crv\":\"Ed25519\","
+                + "\"x\":\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(
+                        Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length)) + "\"}");
+    }
+
+    public KeyPair keyPair(String kid) {
+        return keyPairs.get(kid);
+    }
+
+    public String json() {
+        return "{\"keys\":[" + String.join(",", keys) + "]}";
+    }
+
+    /**
+     * Nombre de téléchargements du JWKS depuis {@link #install()}.
+     */
+    public int fetches() {
+        return fetches.get();
+    }
+
+    /**
+     * Installer dans {@link JwtUtils} un magasin de clés servant ce JWKS.
+     */
+    public void install() {
+        byte[] jwks = json().getBytes(StandardCharsets.UTF_8);
+        fetches.set(0);
+        JwtUtils.setKeyStore(new JwksKeyStore(() -> URI.create("http://localhost/jwks"),
+                uri -> {
+                    fetches.incrementAndGet();
+                    return new ByteArrayInputStream(jwks);
+                },
+                JwksKeyStore.DEFAULT_TTL, JwksKeyStore.DEFAULT_REFRESH_AHEAD,
+                JwksKeyStore.DEFAULT_MIN_FORCED_REFRESH_INTERVAL, Clock.systemUTC()));
+    }
+
+    /**
+     * Rétablir le magasin par défaut pointant vers ProConnect.
+     */
+    public static void uninstall() {
+        JwtUtils.setKeyStore(new JwksKeyStore(() -> URI.create(Constants.ProConnect.JWKS_ENDPOINT)));
+    }
+
+    private LocalJwks ec(String kid, String curveName, String curve, int length, JwtAlgorithmEnum algorithm)
+            throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec(curveName));
+        KeyPair keyPair = generator.generateKeyPair();
+        ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+        return add(kid, keyPair, "{\"kty\":\"EC\",\"kid\":\"" + kid + "\","
+                + (algorithm != null ? "\"alg\":\"" + algorithm.name() + "\"," : "")
+                + "\"crv\":\"" + curve + "\","
+                + "\"x\":\"" + base64Url(publicKey.getW().getAffineX(), length) + "\","
+                + "\"y\":\"" + base64Url(publicKey.getW().getAffineY(), length) + "\"}");
+    }
+
+    private LocalJwks add(String kid, KeyPair keyPair, String jwk) {
+        keyPairs.put(kid, keyPair);
+        keys.add(jwk);
+        return this;
+    }
+
+    /**
+     * Entier non signé sur {@code length} octets, en base64url.
+     */
+    private static String base64Url(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > length) {
+            bytes = Arrays.copyOfRange(bytes, bytes.length - length, bytes.length);
+        } else if (bytes.length < length) {
+            byte[] padded = new byte[length];
+            System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+            bytes = padded;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
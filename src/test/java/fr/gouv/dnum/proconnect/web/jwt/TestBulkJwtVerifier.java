@@ -0,0 +1,100 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBulkJwtVerifier {
+
+    private static final String KID = "test-bulk-es256";
+
+    private static LocalJwks jwks;
+    private static KeyPair keyPair;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        jwks = new LocalJwks().ec(KID);
+        keyPair = jwks.keyPair(KID);
+        jwks.install();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        LocalJwks.uninstall();
+    }
+
+    @Test
+    void testVerifyAll_ShouldReturnOneResultPerTokenInOrder() {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tokens.add(token(KID, "user" + i));
+        }
+        String valid = tokens.get(0);
+        tokens.set(10, valid.substring(0, valid.length() - 4) + "AAAA");
+        tokens.set(20, "pas-un-jwt");
+        tokens.set(30, token("kid-inconnu", "user30"));
+        tokens.set(40, token("kid-inconnu", "user40"));
+
+        List<JwtVerification> results;
+        try (BulkJwtVerifier verifier = new BulkJwtVerifier(4)) {
+            results = verifier.verifyAll(tokens, JwtAlgorithmEnum.ES256);
+        }
+
+        assertEquals(200, results.size());
+        assertEquals(196, results.stream().filter(JwtVerification::isValid).count());
+        assertEquals("user199", results.get(199).claims().getSubject());
+        for (int i : new int[]{10, 20, 30, 40}) {
+            assertFalse(results.get(i).isValid(), "Le jeton " + i + " doit être refusé");
+            assertEquals(i, results.get(i).index());
+            assertNull(results.get(i).claims());
+        }
+        assertNull(results.get(20).kid());
+        assertSame(results.get(30).error(), results.get(40).error(), "Le kid inconnu ne doit être résolu qu'une fois");
+        // chargement initial + un seul re-téléchargement pour le kid inconnu
+        assertEquals(2, jwks.fetches());
+    }
+
+    @Test
+    void testVerifyAll_WithExpiredArchivedToken_ShouldCheckValidityAtReferenceInstant() {
+        Instant issuedAt = Instant.now().minus(Duration.ofDays(30));
+        String archived = token(KID, "archive", issuedAt.plus(Duration.ofMinutes(5)));
+        String tampered = archived.substring(0, archived.length() - 4) + "AAAA";
+
+        try (BulkJwtVerifier verifier = new BulkJwtVerifier(2)) {
+            assertInstanceOf(ExpiredJwtException.class, verifier.verifyAll(List.of(archived), JwtAlgorithmEnum.ES256).get(0).error());
+
+            assertTrue(verifier.verifyAll(List.of(archived), JwtAlgorithmEnum.ES256, issuedAt).get(0).isValid());
+            assertInstanceOf(ExpiredJwtException.class, verifier.verifyAll(List.of(archived), JwtAlgorithmEnum.ES256,
+                    issuedAt.plus(Duration.ofMinutes(6))).get(0).error());
+
+            List<JwtVerification> signatures = verifier.verifySignatures(List.of(archived, tampered), JwtAlgorithmEnum.ES256);
+            assertEquals("archive", signatures.get(0).claims().getSubject());
+            assertInstanceOf(SignatureException.class, signatures.get(1).error());
+        }
+    }
+
+    private static String token(String kid, String subject) {
+        return token(kid, subject, null);
+    }
+
+    private static String token(String kid, String subject, Instant expiration) {
+        return Jwts.builder()
+                .header().keyId(kid).and()
+                .subject(subject)
+                .expiration(expiration != null ? Date.from(expiration) : null)
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+}
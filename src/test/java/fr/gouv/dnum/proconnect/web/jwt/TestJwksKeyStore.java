@@ -0,0 +1,230 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestJwksKeyStore {
+
+    private static final String JWKS_V1 = "{\"keys\":[{\"kty\":\"EC\",\"kid\":\"k1\",\"crv\":\"P-256\",\"x\":\"a\",\"y\":\"b\"}]}";
+    private static final String JWKS_V2 = "{\"keys\":[{\"kty\":\"EC\",\"kid\":\"k1\",\"crv\":\"P-256\",\"x\":\"a\",\"y\":\"b\"},"
+            + "{\"kty\":\"EC\",\"kid\":\"k2\",\"crv\":\"P-256\",\"x\":\"c\",\"y\":\"d\"}]}";
+
+    private final AtomicInteger fetchCount = new AtomicInteger();
+    private final AtomicReference<String> jwks = new AtomicReference<>(JWKS_V1);
+    private final MutableClock clock = new MutableClock();
+    private JwksKeyStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new JwksKeyStore(() -> URI.create("http://localhost/jwks"), uri -> {
+            fetchCount.incrementAndGet();
+            return new ByteArrayInputStream(jwks.get().getBytes(StandardCharsets.UTF_8));
+        }, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ofSeconds(30), clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void testGetKey_ShouldFetchOnlyOnceWithinTtl() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            assertEquals("a", ((Jwk.Ec) store.getKey("k1")).x());
+        }
+        assertEquals(1, fetchCount.get(), "Le JWKS ne doit être téléchargé qu'une fois");
+    }
+
+    @Test
+    void testGetKey_ShouldRefetchAfterTtl() throws Exception {
+        store.getKey("k1");
+        clock.advance(Duration.ofMinutes(11));
+        store.getKey("k1");
+        assertEquals(2, fetchCount.get(), "Le JWKS doit être re-téléchargé après expiration");
+    }
+
+    @Test
+    void testGetKey_UnknownKid_ShouldForceOneRefetch() throws Exception {
+        store.getKey("k1");
+        jwks.set(JWKS_V2);
+
+        assertEquals("c", ((Jwk.Ec) store.getKey("k2")).x());
+        assertEquals(2, fetchCount.get());
+    }
+
+    @Test
+    void testGetKey_UnknownKid_ShouldBeRateLimited() throws Exception {
+        store.getKey("k1");
+
+        assertThrows(IllegalArgumentException.class, () -> store.getKey("inconnu"));
+        assertThrows(IllegalArgumentException.class, () -> store.getKey("inconnu"));
+        assertEquals(2, fetchCount.get(), "Un seul re-téléchargement forcé par intervalle");
+
+        clock.advance(Duration.ofSeconds(31));
+        assertThrows(IllegalArgumentException.class, () -> store.getKey("inconnu"));
+        assertEquals(3, fetchCount.get());
+    }
+
+    @Test
+    void testGetKey_UnchangedKey_ShouldKeepSameInstanceAcrossRefresh() throws Exception {
+        Object before = store.getKey("k1");
+        jwks.set(JWKS_V2);
+        store.getKey("k2");
+        assertSame(before, store.getKey("k1"), "Une clé inchangée doit conserver son instance");
+    }
+
+    @Test
+    void testGetKey_ConcurrentMisses_ShouldShareOneFetch() throws Exception {
+        jwks.set(JWKS_V2);
+        CountDownLatch release = new CountDownLatch(1);
+        JwksKeyStore blocking = new JwksKeyStore(() -> URI.create("http://localhost/jwks"), uri -> {
+            fetchCount.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ByteArrayInputStream(jwks.get().getBytes(StandardCharsets.UTF_8));
+        }, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ZERO, clock);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Jwk>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> blocking.getKey("k2")));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<Jwk> result : results) {
+                assertEquals("c", ((Jwk.Ec) result.get()).x());
+            }
+        } finally {
+            executor.shutdownNow();
+            blocking.close();
+        }
+        assertEquals(1, fetchCount.get(), "Les appels concurrents doivent partager un seul téléchargement");
+    }
+
+    @Test
+    void testGetKey_AfterFailure_ShouldBackOffAndServeKnownKeys() throws Exception {
+        store.getKey("k1");
+        jwks.set("pas du json");
+        clock.advance(Duration.ofMinutes(11));
+
+        // JWKS expiré et téléchargement en échec : le kid connu reste servi
+        assertEquals("a", ((Jwk.Ec) store.getKey("k1")).x());
+        assertEquals(2, fetchCount.get());
+
+        // échec mémorisé : pas de nouvel appel pendant le backoff
+        assertThrows(IOException.class, () -> store.getKey("k2"));
+        assertEquals("a", ((Jwk.Ec) store.getKey("k1")).x());
+        assertEquals(2, fetchCount.get());
+
+        jwks.set(JWKS_V2);
+        clock.advance(JwksKeyStore.DEFAULT_FAILURE_BACKOFF);
+        assertEquals("c", ((Jwk.Ec) store.getKey("k2")).x());
+        assertEquals(3, fetchCount.get());
+    }
+
+    @Test
+    void testGetKeyAsync_ShouldCompleteImmediatelyOnlyForKnownFreshKey() throws Exception {
+        jwks.set(JWKS_V2);
+        CountDownLatch release = new CountDownLatch(1);
+        JwksKeyStore blocking = new JwksKeyStore(() -> URI.create("http://localhost/jwks"), uri -> {
+            fetchCount.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ByteArrayInputStream(jwks.get().getBytes(StandardCharsets.UTF_8));
+        }, Duration.ofMinutes(10), Duration.ofMinutes(1), Duration.ZERO, clock);
+        try {
+            // premier appel : le téléchargement ne bloque pas l'appelant
+            CompletableFuture<Jwk> first = blocking.getKeyAsync("k2");
+            assertFalse(first.isDone());
+            release.countDown();
+            assertEquals("c", ((Jwk.Ec) first.get(5, TimeUnit.SECONDS)).x());
+
+            CompletableFuture<Jwk> known = blocking.getKeyAsync("k1");
+            assertTrue(known.isDone(), "Une clé connue doit être servie sans attente");
+            assertEquals("a", ((Jwk.Ec) known.join()).x());
+            assertEquals(1, fetchCount.get());
+        } finally {
+            blocking.close();
+        }
+    }
+
+    @Test
+    void testScheduledRefresh_AfterFailure_ShouldRetryAfterBackoff() throws Exception {
+        JwksKeyStore scheduled = new JwksKeyStore(() -> URI.create("http://localhost/jwks"), uri -> {
+            fetchCount.incrementAndGet();
+            return new ByteArrayInputStream(jwks.get().getBytes(StandardCharsets.UTF_8));
+        }, Duration.ofMillis(300), Duration.ofMillis(200), Duration.ZERO, Duration.ofMillis(50), Clock.systemUTC());
+        try {
+            scheduled.getKey("k1");
+            jwks.set("pas du json");
+            // premier rafraîchissement anticipé (100 ms) en échec, puis nouvel essai après le backoff
+            awaitFetchCount(3);
+            jwks.set(JWKS_V2);
+            awaitFetchCount(5);
+
+            assertEquals("c", ((Jwk.Ec) scheduled.getKey("k2")).x());
+        } finally {
+            scheduled.close();
+        }
+    }
+
+    private void awaitFetchCount(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fetchCount.get() < expected) {
+            assertTrue(System.nanoTime() < deadline, "Le JWKS doit être re-téléchargé en arrière-plan");
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
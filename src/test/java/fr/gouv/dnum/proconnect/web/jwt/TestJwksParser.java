@@ -0,0 +1,54 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestJwksParser {
+
+    private static Map<String, Jwk> parse(String json) throws IOException {
+        return JwksParser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testParse_ShouldReadEcRsaAndOkpKeys() throws Exception {
+        Map<String, Jwk> keys = parse("{\"keys\":["
+                + "{\"kty\":\"EC\",\"kid\":\"ec1\",\"alg\":\"ES256\",\"crv\":\"P-256\",\"x\":\"xx\",\"y\":\"yy\"},"
+                + "{\"kty\":\"RSA\",\"kid\":\"rsa1\",\"n\":\"nn\",\"e\":\"AQAB\"},"
+                + "{\"kty\":\"OKP\",\"kid\":\"ed1\",\"alg\":\"EdDSA\",\"crv\":\"Ed25519\",\"x\":\"xx\"}]}");
+
+        assertEquals(new Jwk.Ec("ec1", "ES256", "P-256", "xx", "yy"), keys.get("ec1"));
+        assertEquals(new Jwk.Rsa("rsa1", null, "nn", "AQAB"), keys.get("rsa1"));
+        assertEquals(new Jwk.Okp("ed1", "EdDSA", "Ed25519", "xx"), keys.get("ed1"));
+    }
+
+    @Test
+    void testParse_ShouldIgnoreWhitespaceAndFieldOrder() throws Exception {
+        Map<String, Jwk> keys = parse("{\n  \"other\" : {\"a\": [1, 2]},\n  \"keys\" : [ {\n"
+                + "    \"y\" : \"yy\", \"x\" : \"xx\",\n    \"crv\" : \"P-256\", \"kid\" : \"ec1\", \"kty\" : \"EC\"\n  } ]\n}");
+
+        assertEquals(new Jwk.Ec("ec1", null, "P-256", "xx", "yy"), keys.get("ec1"));
+    }
+
+    @Test
+    void testParse_ShouldSkipUnsupportedAndIncompleteKeys() throws Exception {
+        Map<String, Jwk> keys = parse("{\"keys\":["
+                + "{\"kty\":\"oct\",\"kid\":\"sym\",\"k\":\"secret\"},"
+                + "{\"kty\":\"EC\",\"kid\":\"incomplet\",\"crv\":\"P-256\",\"x\":\"xx\"},"
+                + "{\"kty\":\"EC\",\"crv\":\"P-256\",\"x\":\"xx\",\"y\":\"yy\"},"
+                + "{\"kty\":\"RSA\",\"kid\":\"rsa1\",\"x5c\":[\"MIIB\"],\"key_ops\":[\"verify\"],\"n\":\"nn\",\"e\":\"AQAB\"}]}");
+
+        assertEquals(1, keys.size());
+        assertTrue(keys.containsKey("rsa1"));
+    }
+
+    @Test
+    void testParse_WithInvalidDocument_ShouldFail() {
+        assertThrows(IOException.class, () -> parse("[]"));
+    }
+}
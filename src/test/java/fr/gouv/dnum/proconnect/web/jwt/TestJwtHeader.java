@@ -0,0 +1,45 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestJwtHeader {
+
+    private static String token(String headerJson) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(headerJson.getBytes(StandardCharsets.UTF_8))
+                + ".payload.signature";
+    }
+
+    @Test
+    void testParse_ShouldReadKidAlgTyp() {
+        JwtHeader header = JwtHeader.parse(token("{\"alg\":\"ES256\",\"kid\":\"abc\",\"typ\":\"JWT\"}"));
+
+        assertEquals(new JwtHeader("abc", "ES256", "JWT"), header);
+    }
+
+    @Test
+    void testParse_ShouldHandleAllPaddingLengthsAndExtraFields() {
+        // longueurs d'en-tête différentes pour couvrir les trois cas de fin de bloc base64url
+        for (String extra : new String[]{"", "a", "ab", "abc"}) {
+            String json = "{ \"kid\" : \"k-" + extra + "\", \"crit\":[\"x\"], \"jwk\":{\"kty\":\"EC\"}, \"alg\":\"RS256\" }";
+
+            JwtHeader header = JwtHeader.parse(token(json));
+
+            assertEquals("k-" + extra, header.kid());
+            assertEquals("RS256", header.alg());
+            assertNull(header.typ());
+        }
+    }
+
+    @Test
+    void testParse_WithMalformedToken_ShouldFail() {
+        assertThrows(IllegalArgumentException.class, () -> JwtHeader.parse("sans-point"));
+        assertThrows(IllegalArgumentException.class, () -> JwtHeader.parse(".payload.signature"));
+        assertThrows(IllegalArgumentException.class, () -> JwtHeader.parse("e30=.payload.signature"));
+        assertThrows(IllegalArgumentException.class, () -> JwtHeader.parse(token("[1,2]")));
+    }
+}
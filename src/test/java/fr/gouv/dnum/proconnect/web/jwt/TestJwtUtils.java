@@ -0,0 +1,191 @@
+package fr.gouv.dnum.proconnect.web.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.InvalidKeyException;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.WeakKeyException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestJwtUtils {
+
+    private static final String KID = "test-es256";
+    private static final String ES384_KID = "test-es384";
+    private static final String RSA_KID = "test-rsa";
+    private static final String ED25519_KID = "test-ed25519";
+    private static final String WEAK_RSA_KID = "test-rsa-1024";
+
+    private static KeyPair keyPair;
+    private static KeyPair es384KeyPair;
+    private static KeyPair rsaKeyPair;
+    private static KeyPair ed25519KeyPair;
+    private static KeyPair weakRsaKeyPair;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        // un JWKS mêlant plusieurs types de clés, comme pendant une migration d'algorithme
+        LocalJwks jwks = new LocalJwks()
+                .ec(KID)
+                .ec(ES384_KID, JwtAlgorithmEnum.ES384)
+                .rsa(RSA_KID)
+                .ed25519(ED25519_KID)
+                .rsa(WEAK_RSA_KID, 1024);
+        keyPair = jwks.keyPair(KID);
+        es384KeyPair = jwks.keyPair(ES384_KID);
+        rsaKeyPair = jwks.keyPair(RSA_KID);
+        ed25519KeyPair = jwks.keyPair(ED25519_KID);
+        weakRsaKeyPair = jwks.keyPair(WEAK_RSA_KID);
+        jwks.install();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        LocalJwks.uninstall();
+    }
+
+    @Test
+    void testVerifyJwt_ShouldReturnClaims() throws Exception {
+        String token = Jwts.builder()
+                .header().keyId(KID).and()
+                .subject("user123")
+                .signWith(keyPair.getPrivate())
+                .compact();
+
+        Claims claims = JwtUtils.verifyJwt(token, JwtAlgorithmEnum.ES256);
+
+        assertEquals("user123", claims.getSubject());
+    }
+
+    @Test
+    void testGetVerifier_ShouldReuseBuiltVerifier() throws Exception {
+        JwtVerifier first = JwtUtils.getVerifier(KID, JwtAlgorithmEnum.ES256);
+        JwtVerifier second = JwtUtils.getVerifier(KID, JwtAlgorithmEnum.ES256);
+
+        assertSame(first, second, "Le vérificateur doit être mis en cache");
+        assertEquals(keyPair.getPublic(), first.publicKey());
+    }
+
+    @Test
+    void testVerifyJwt_WithTamperedSignature_ShouldFail() {
+        String token = Jwts.builder()
+                .header().keyId(KID).and()
+                .subject("user123")
+                .signWith(keyPair.getPrivate())
+                .compact();
+        String tampered = token.substring(0, token.lastIndexOf('.') + 1) + "AAAA" + token.substring(token.lastIndexOf('.') + 5);
+
+        assertThrows(Exception.class, () -> JwtUtils.verifyJwt(tampered, JwtAlgorithmEnum.ES256));
+    }
+
+    @Test
+    void testVerifyJwt_ShouldDispatchOnHeaderAlgorithm() throws Exception {
+        assertEquals("es256", JwtUtils.verifyJwt(token(KID, "es256", keyPair, Jwts.SIG.ES256)).getSubject());
+        assertEquals("es384", JwtUtils.verifyJwt(token(ES384_KID, "es384", es384KeyPair, Jwts.SIG.ES384)).getSubject());
+        assertEquals("rs256", JwtUtils.verifyJwt(token(RSA_KID, "rs256", rsaKeyPair, Jwts.SIG.RS256)).getSubject());
+        assertEquals("ps256", JwtUtils.verifyJwt(token(RSA_KID, "ps256", rsaKeyPair, Jwts.SIG.PS256)).getSubject());
+        assertEquals("eddsa", JwtUtils.verifyJwt(token(ED25519_KID, "eddsa", ed25519KeyPair, Jwts.SIG.EdDSA)).getSubject());
+
+        // une même clé RSA sert aux deux algorithmes : un vérificateur par couple (kid, algorithme)
+        assertNotSame(JwtUtils.getVerifier(RSA_KID, JwtAlgorithmEnum.RS256), JwtUtils.getVerifier(RSA_KID, JwtAlgorithmEnum.PS256));
+    }
+
+    @Test
+    void testVerifyJwt_WithAlgorithmOutsideAllowListOrMismatch_ShouldFail() {
+        String unsigned = Jwts.builder().header().keyId(KID).and().subject("user123").compact();
+        String hmac = Jwts.builder().header().keyId(KID).and().subject("user123")
+                .signWith(Keys.hmacShaKeyFor(new byte[32])).compact();
+        String critical = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                ("{\"alg\":\"ES256\",\"kid\":\"" + KID + "\",\"crit\":[\"b64\"],\"b64\":false}").getBytes(StandardCharsets.UTF_8))
+                + ".e30.AAAA";
+
+        assertThrows(UnsupportedJwtException.class, () -> JwtUtils.verifyJwt(unsigned));
+        assertThrows(UnsupportedJwtException.class, () -> JwtUtils.verifyJwt(hmac));
+        assertThrows(UnsupportedJwtException.class, () -> JwtUtils.verifyJwt(critical));
+        // algorithme imposé par l'appelant
+        assertThrows(UnsupportedJwtException.class,
+                () -> JwtUtils.verifyJwt(token(KID, "es256", keyPair, Jwts.SIG.ES256), JwtAlgorithmEnum.RS256));
+        // clé réservée à ES384 par son champ alg
+        assertThrows(UnsupportedJwtException.class, () -> JwtUtils.getVerifier(ES384_KID, JwtAlgorithmEnum.ES512));
+        // courbe P-256 incompatible avec ES384
+        assertThrows(IllegalArgumentException.class, () -> JwtUtils.getVerifier(KID, JwtAlgorithmEnum.ES384));
+    }
+
+    @Test
+    void testVerifyJwt_ShouldOnlyAcceptDiscoveredAlgorithms() throws Exception {
+        // liste annoncée par la découverte : les noms hors liste autorisée sont ignorés
+        Set<JwtAlgorithmEnum> discovered = JwtAlgorithmEnum.supportedAmong(List.of("ES256", "HS256", "none"));
+
+        assertEquals(Set.of(JwtAlgorithmEnum.ES256), discovered);
+        assertEquals("es256", JwtUtils.verifyJwt(token(KID, "es256", keyPair, Jwts.SIG.ES256), discovered).getSubject());
+        assertThrows(UnsupportedJwtException.class,
+                () -> JwtUtils.verifyJwt(token(RSA_KID, "rs256", rsaKeyPair, Jwts.SIG.RS256), discovered));
+    }
+
+    @Test
+    void testVerifyJwt_WhenExpired_ShouldFail() {
+        String expired = Jwts.builder()
+                .header().keyId(KID).and()
+                .subject("user123")
+                .expiration(new Date(System.currentTimeMillis() - 60_000))
+                .signWith(keyPair.getPrivate())
+                .compact();
+
+        assertThrows(ExpiredJwtException.class, () -> JwtUtils.verifyJwt(expired));
+    }
+
+    @Test
+    void testVerifyJwt_WithWeakRsaKey_ShouldFail() throws Exception {
+        // jjwt refuse de signer avec une clé de 1024 bits : signature faite directement
+        String token = rs256Token(WEAK_RSA_KID, "weak", weakRsaKeyPair);
+
+        assertThrows(WeakKeyException.class, () -> JwtUtils.verifyJwt(token));
+        // la clé refusée n'est pas mise en cache
+        assertThrows(WeakKeyException.class, () -> JwtUtils.getVerifier(WEAK_RSA_KID, JwtAlgorithmEnum.RS256));
+        assertThrows(WeakKeyException.class, () -> JwtUtils.getVerifier(WEAK_RSA_KID, JwtAlgorithmEnum.PS256));
+    }
+
+    @Test
+    void testNewVerifier_WithKeyNotMatchingAlgorithm_ShouldFail() {
+        assertThrows(WeakKeyException.class,
+                () -> new JwtVerifier(null, weakRsaKeyPair.getPublic(), JwtAlgorithmEnum.RS256));
+        assertThrows(InvalidKeyException.class,
+                () -> new JwtVerifier(null, keyPair.getPublic(), JwtAlgorithmEnum.ES384));
+        assertThrows(InvalidKeyException.class,
+                () -> new JwtVerifier(null, rsaKeyPair.getPublic(), JwtAlgorithmEnum.ES256));
+        assertThrows(InvalidKeyException.class,
+                () -> new JwtVerifier(null, keyPair.getPublic(), JwtAlgorithmEnum.EdDSA));
+    }
+
+    private static String rs256Token(String kid, String subject, KeyPair signingKey) throws Exception {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String signingInput = encoder.encodeToString(("{\"alg\":\"RS256\",\"kid\":\"" + kid + "\"}").getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(("{\"sub\":\"" + subject + "\"}").getBytes(StandardCharsets.UTF_8));
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(signingKey.getPrivate());
+        signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + encoder.encodeToString(signature.sign());
+    }
+
+    private static String token(String kid, String subject, KeyPair signingKey,
+                                io.jsonwebtoken.security.SignatureAlgorithm algorithm) {
+        return Jwts.builder()
+                .header().keyId(kid).and()
+                .subject(subject)
+                .signWith(signingKey.getPrivate(), algorithm)
+                .compact();
+    }
+}
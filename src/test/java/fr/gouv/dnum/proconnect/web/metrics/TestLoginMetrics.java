@@ -0,0 +1,41 @@
+package fr.gouv.dnum.proconnect.web.metrics;
+
+import fr.gouv.dnum.proconnect.web.replay.ReplayCacheFullException;
+import fr.gouv.dnum.proconnect.web.resilience.CallNotPermittedException;
+import fr.gouv.dnum.proconnect.web.resilience.ProConnectEndpoint;
+import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLoginMetrics {
+
+    @Test
+    void testRejectionOf_ShouldMapValidatorAndTransportErrors() {
+        assertEquals(LoginMetrics.Rejection.BAD_ISS, LoginMetrics.rejectionOf(new SecurityException("bad iss")));
+        assertEquals(LoginMetrics.Rejection.BAD_AUD, LoginMetrics.rejectionOf(new SecurityException("bad aud")));
+        assertEquals(LoginMetrics.Rejection.EXPIRED, LoginMetrics.rejectionOf(new SecurityException("expired")));
+        assertEquals(LoginMetrics.Rejection.BAD_NONCE, LoginMetrics.rejectionOf(new SecurityException("bad nonce")));
+        assertEquals(LoginMetrics.Rejection.BAD_SUB, LoginMetrics.rejectionOf(new SecurityException("bad sub")));
+        assertEquals(LoginMetrics.Rejection.REPLAY_CACHE_FULL, LoginMetrics.rejectionOf(new ReplayCacheFullException()));
+        assertEquals(LoginMetrics.Rejection.INVALID_JWT, LoginMetrics.rejectionOf(new SignatureException("signature")));
+        assertEquals(LoginMetrics.Rejection.HTTP_ERROR, LoginMetrics.rejectionOf(new ResourceAccessException("timeout")));
+        assertEquals(LoginMetrics.Rejection.UNAVAILABLE, LoginMetrics.rejectionOf(
+                new CallNotPermittedException(ProConnectEndpoint.TOKEN, CallNotPermittedException.Reason.CIRCUIT_OPEN)));
+        assertEquals(LoginMetrics.Rejection.ERROR, LoginMetrics.rejectionOf(new IllegalStateException()));
+    }
+
+    @Test
+    void testTimeAndReject_ShouldRecordMeters() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LoginMetrics metrics = new LoginMetrics(registry);
+
+        assertEquals("ok", metrics.time(LoginMetrics.Stage.TOKEN_EXCHANGE, () -> "ok"));
+        metrics.reject(new SecurityException("bad nonce"));
+
+        assertEquals(1, registry.get("proconnect.login.stage").tag("stage", "token_exchange").timer().count());
+        assertEquals(1.0, registry.get("proconnect.login.rejected").tag("reason", "bad_nonce").counter().count());
+    }
+}
@@ -0,0 +1,47 @@
+package fr.gouv.dnum.proconnect.web.oidc;
+
+import fr.gouv.dnum.proconnect.Constants;
+import fr.gouv.dnum.proconnect.web.handshake.HandshakeRandom;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestAuthorizeUrlTemplate {
+
+    @Test
+    void testBuild_ShouldMatchUriComponentsBuilder() {
+        AuthorizeUrlTemplate template = AuthorizeUrlTemplate.of(Constants.ProConnect.AUTH_ENDPOINT);
+
+        String expected = UriComponentsBuilder
+                .fromHttpUrl(Constants.ProConnect.AUTH_ENDPOINT)
+                .queryParam("client_id", Constants.ProConnect.CLIENT_ID)
+                .queryParam("nonce", "b7Rk2pQz9XvLm0Wc4sTe1A")
+                .queryParam("response_type", "code")
+                .queryParam("scope", "openid profile email siret")
+                .queryParam("state", "Xq3b0kW9Tz2fQm1rX4o9Zg")
+                .queryParam("redirect_uri", Constants.MyApplication.REDIRECT_URI)
+                .build(false)
+                .toUriString();
+
+        assertEquals(expected, template.build("b7Rk2pQz9XvLm0Wc4sTe1A", "Xq3b0kW9Tz2fQm1rX4o9Zg"));
+    }
+
+    @Test
+    void testHandshakeRandom_ShouldProduceDistinct128BitStatesAndNonces() {
+        HandshakeRandom random = new HandshakeRandom();
+        Set<String> values = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String state = random.nextState();
+            String nonce = random.nextNonce();
+            assertTrue(state.matches("[A-Za-z0-9_-]{22}"), state);
+            assertTrue(nonce.matches("[A-Za-z0-9_-]{22}"), nonce);
+            values.add(state);
+            values.add(nonce);
+        }
+        assertEquals(2000, values.size());
+    }
+}
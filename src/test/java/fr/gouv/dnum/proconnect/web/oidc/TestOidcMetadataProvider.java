@@ -0,0 +1,96 @@
+package fr.gouv.dnum.proconnect.web.oidc;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestOidcMetadataProvider {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String DISCOVERY = "{"
+            + "\"issuer\":\"https://idp.local/api/v2\","
+            + "\"authorization_endpoint\":\"https://idp.local/api/v2/authorize\","
+            + "\"token_endpoint\":\"https://idp.local/api/v2/token\","
+            + "\"userinfo_endpoint\":\"https://idp.local/api/v2/userinfo\","
+            + "\"end_session_endpoint\":\"https://idp.local/api/v2/session/end\","
+            + "\"jwks_uri\":\"https://idp.local/api/v2/jwks\","
+            + "\"id_token_signing_alg_values_supported\":[\"ES256\",\"RS256\"]}";
+
+    private final AtomicInteger fullResponses = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private HttpServer server;
+    private OidcMetadataProvider provider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/.well-known/openid-configuration", exchange -> {
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                fullResponses.incrementAndGet();
+                byte[] body = DISCOVERY.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/.well-known/openid-configuration");
+        provider = new OidcMetadataProvider(new RestTemplate(), uri, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        provider.close();
+        server.stop(0);
+    }
+
+    @Test
+    void testStart_ShouldLoadEndpoints() {
+        provider.start();
+
+        OidcMetadata metadata = provider.current();
+        assertEquals("https://idp.local/api/v2", metadata.issuer());
+        assertEquals("https://idp.local/api/v2/token", metadata.tokenEndpoint());
+        assertEquals("https://idp.local/api/v2/jwks", metadata.jwksUri());
+        assertTrue(metadata.idTokenSigningAlgValuesSupported().contains("RS256"));
+        // champ absent : valeur par défaut
+        assertEquals(OidcMetadata.defaults().userinfoSigningAlgValuesSupported(),
+                metadata.userinfoSigningAlgValuesSupported());
+    }
+
+    @Test
+    void testRefresh_Unchanged_ShouldUseConditionalGet() throws Exception {
+        provider.start();
+        OidcMetadata first = provider.current();
+
+        assertFalse(provider.refresh(), "Un document inchangé ne doit pas être ré-analysé");
+        assertSame(first, provider.current());
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModified.get());
+    }
+
+    @Test
+    void testStart_WithUnreachableDiscovery_ShouldKeepDefaults() {
+        server.stop(0);
+
+        provider.start();
+
+        assertEquals(OidcMetadata.defaults(), provider.current());
+    }
+}
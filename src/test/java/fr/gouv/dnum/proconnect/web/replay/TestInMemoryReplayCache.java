@@ -0,0 +1,113 @@
+package fr.gouv.dnum.proconnect.web.replay;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestInMemoryReplayCache {
+
+    private final MutableClock clock = new MutableClock();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final InMemoryReplayCache cache =
+            new InMemoryReplayCache(Duration.ofMinutes(10), 10, 30, clock, registry);
+
+    @Test
+    void testMarkUsed_ShouldAcceptValueOnlyOnce() {
+        Instant expiresAt = clock.instant().plus(Duration.ofMinutes(5));
+
+        assertTrue(cache.markUsed(ReplayCache.Kind.NONCE, "123", expiresAt));
+        assertFalse(cache.markUsed(ReplayCache.Kind.NONCE, "123", expiresAt));
+        assertFalse(cache.markUsed(ReplayCache.Kind.NONCE, "123", expiresAt.plus(Duration.ofMinutes(2))),
+                "Une autre expiration ne doit pas permettre le rejeu");
+        assertTrue(cache.markUsed(ReplayCache.Kind.JTI, "123", expiresAt), "Les types de valeurs sont distincts");
+        assertEquals(2.0, registry.get("proconnect.replay.checks").tag("result", "replayed").counter().count());
+    }
+
+    @Test
+    void testMarkUsed_AfterExpiration_ShouldForgetValue() {
+        assertTrue(cache.markUsed(ReplayCache.Kind.STATE, "init-1", clock.instant().plus(Duration.ofMinutes(2))));
+        assertEquals(1, cache.size());
+
+        clock.advance(Duration.ofMinutes(3));
+
+        assertEquals(0, cache.size());
+        assertTrue(cache.markUsed(ReplayCache.Kind.STATE, "init-1", clock.instant().plus(Duration.ofMinutes(2))));
+    }
+
+    @Test
+    void testMarkUsed_WhenBucketIsFull_ShouldRejectNewValues() {
+        Instant expiresAt = clock.instant().plus(Duration.ofMinutes(5));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(cache.markUsed(ReplayCache.Kind.NONCE, "n" + i, expiresAt));
+        }
+
+        assertThrows(ReplayCacheFullException.class, () -> cache.markUsed(ReplayCache.Kind.NONCE, "n3", expiresAt));
+        assertFalse(cache.markUsed(ReplayCache.Kind.NONCE, "n0", expiresAt), "Un rejeu reste un rejeu");
+        assertTrue(cache.markUsed(ReplayCache.Kind.NONCE, "n3", expiresAt.plus(Duration.ofMinutes(1))),
+                "Les autres tranches ne sont pas concernées");
+        assertEquals(1.0, registry.get("proconnect.replay.checks").tag("result", "full").counter().count());
+        assertEquals(1.0, registry.get("proconnect.replay.checks").tag("result", "replayed").counter().count());
+        assertEquals(4.0, registry.get("proconnect.replay.size").gauge().value());
+    }
+
+    @Test
+    void testMarkUsed_Concurrently_ShouldAcceptEachValueOnce() throws Exception {
+        InMemoryReplayCache large = new InMemoryReplayCache(Duration.ofMinutes(10), 10, 100000, clock, registry);
+        Instant expiresAt = clock.instant().plus(Duration.ofMinutes(5));
+        AtomicInteger firstUses = new AtomicInteger();
+
+        List<Future<?>> tasks = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                tasks.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        if (large.markUsed(ReplayCache.Kind.STATE, "state-" + i, expiresAt)) {
+                            firstUses.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        }
+
+        assertEquals(2000, firstUses.get());
+        assertEquals(2000, large.size());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package fr.gouv.dnum.proconnect.web.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestEndpointGuard {
+
+    private final MutableClock clock = new MutableClock();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final EndpointGuard guard = EndpointGuard.create(ProConnectEndpoint.TOKEN, Duration.ofMillis(200), 2, 3,
+            Duration.ofSeconds(30), clock, registry);
+
+    @Test
+    void testCall_WhenEndpointHangs_ShouldTimeOutAndInterruptCall() throws Exception {
+        long start = System.nanoTime();
+
+        assertThrows(HttpTimeoutException.class, () -> guard.call(() -> {
+            Thread.sleep(10_000);
+            return "trop tard";
+        }));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 5_000, "L'appelant ne doit pas attendre la réponse");
+        // l'appel interrompu rend sa place dans le bulkhead
+        for (int i = 0; i < 100 && guard.active() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, guard.active());
+        assertEquals(1.0, registry.get("proconnect.outbound.calls").tag("outcome", "timeout").counter().count());
+    }
+
+    @Test
+    void testCall_AfterConsecutiveFailures_ShouldOpenThenCloseAfterSuccessfulTrial() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ResourceAccessException.class, () -> guard.call(() -> {
+                attempts.incrementAndGet();
+                throw new ResourceAccessException("connexion refusée");
+            }));
+        }
+
+        CallNotPermittedException rejected = assertThrows(CallNotPermittedException.class,
+                () -> guard.call(attempts::incrementAndGet));
+        assertEquals(CallNotPermittedException.Reason.CIRCUIT_OPEN, rejected.getReason());
+        assertEquals(3, attempts.get(), "Un disjoncteur ouvert ne doit pas appeler ProConnect");
+        assertEquals(2.0, registry.get("proconnect.outbound.breaker.state").gauge().value());
+        assertEquals(1.0, registry.get("proconnect.outbound.rejected").tag("reason", "circuit_open").counter().count());
+
+        clock.advance(Duration.ofSeconds(31));
+
+        assertEquals("ok", guard.call(() -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, guard.state());
+        assertEquals(0.0, registry.get("proconnect.outbound.breaker.state").gauge().value());
+    }
+
+    @Test
+    void testCall_WhenTrialFails_ShouldReopen() {
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ResourceAccessException.class, () -> guard.call(() -> {
+                throw new ResourceAccessException("connexion refusée");
+            }));
+        }
+        clock.advance(Duration.ofSeconds(31));
+
+        assertThrows(ResourceAccessException.class, () -> guard.call(() -> {
+            throw new ResourceAccessException("toujours indisponible");
+        }));
+
+        assertEquals(CircuitBreaker.State.OPEN, guard.state());
+        assertThrows(CallNotPermittedException.class, () -> guard.call(() -> "ok"));
+    }
+
+    @Test
+    void testCall_ClientErrors_ShouldNotOpenBreaker() {
+        for (int i = 0; i < 5; i++) {
+            assertThrows(HttpClientErrorException.class, () -> guard.call(() -> {
+                throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+            }));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, guard.state());
+    }
+
+    @Test
+    void testCallAsync_WhenBulkheadIsFull_ShouldRejectImmediately() throws Exception {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        guard.callAsync(() -> first, result -> false);
+        guard.callAsync(() -> second, result -> false);
+
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> guard.callAsync(() -> CompletableFuture.completedFuture("ok"), result -> false).get());
+        assertEquals(CallNotPermittedException.Reason.BULKHEAD_FULL,
+                ((CallNotPermittedException) rejected.getCause()).getReason());
+        assertEquals(1.0, registry.get("proconnect.outbound.rejected").tag("reason", "bulkhead_full").counter().count());
+
+        first.complete("ok");
+
+        assertEquals(1, guard.active());
+        assertEquals(1.0, registry.get("proconnect.outbound.active").gauge().value());
+        assertEquals("ok", guard.callAsync(() -> CompletableFuture.completedFuture("ok"), result -> false).get());
+    }
+
+    @Test
+    void testCallAsync_FailedResults_ShouldCountAsFailures() {
+        for (int i = 0; i < 3; i++) {
+            guard.callAsync(() -> CompletableFuture.completedFuture(503), status -> status >= 500);
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, guard.state());
+        assertEquals(3.0, registry.get("proconnect.outbound.calls").tag("outcome", "failure").counter().count());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package fr.gouv.dnum.proconnect.web.session;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestProConnectPrincipal {
+
+    private static final Instant EXP = Instant.parse("2024-01-01T12:00:00Z");
+
+    @Test
+    void testFrom_ShouldKeepOnlyTypedClaims() {
+        Claims idToken = Jwts.claims().subject("user123").expiration(Date.from(EXP)).build();
+        Map<String, Object> userInfo = userInfo();
+
+        ProConnectPrincipal principal = ProConnectPrincipal.from(idToken, userInfo);
+
+        assertEquals(new ProConnectPrincipal("user123", "jean.dupont@example.gouv.fr", "21340126800130",
+                "Jean", "Dupont", EXP), principal);
+        assertEquals("user123", principal.getName());
+        assertEquals(Map.of("sub", "user123", "email", "jean.dupont@example.gouv.fr", "siret", "21340126800130",
+                "given_name", "Jean", "usual_name", "Dupont", "exp", EXP.getEpochSecond()), principal.toClaims());
+    }
+
+    @Test
+    void testFrom_WithoutUsualName_ShouldUseFamilyName() {
+        Claims idToken = Jwts.claims().subject("user123").build();
+
+        ProConnectPrincipal principal = ProConnectPrincipal.from(idToken, Map.of("sub", "user123", "family_name", "Martin"));
+
+        assertEquals("user123", principal.sub());
+        assertEquals("Martin", principal.usualName());
+        assertNull(principal.email());
+        assertNull(principal.expiresAt());
+    }
+
+    @Test
+    void testFrom_WithMissingOrDifferentUserInfoSub_ShouldBeRejected() {
+        Claims idToken = Jwts.claims().subject("user123").build();
+        Map<String, Object> otherUser = userInfo();
+        otherUser.put("sub", "user456");
+
+        assertEquals("bad sub", assertThrows(SecurityException.class,
+                () -> ProConnectPrincipal.from(idToken, otherUser)).getMessage());
+        assertEquals("bad sub", assertThrows(SecurityException.class,
+                () -> ProConnectPrincipal.from(idToken, Map.of("family_name", "Martin"))).getMessage());
+    }
+
+    @Test
+    void testSerialization_ShouldRoundTripInCompactForm() throws Exception {
+        ProConnectPrincipal principal = new ProConnectPrincipal("user123", "jean.dupont@example.gouv.fr",
+                "21340126800130", "Jean", null, EXP);
+
+        byte[] principalBytes = serialize(principal);
+        byte[] mapBytes = serialize(new HashMap<>(userInfo()));
+
+        assertEquals(principal, deserialize(principalBytes));
+        assertEquals(principal, ProConnectPrincipal.fromBytes(principal.toBytes()));
+        assertTrue(principalBytes.length * 3 < mapBytes.length,
+                "Principal : " + principalBytes.length + " octets, Map userinfo : " + mapBytes.length + " octets");
+    }
+
+    @Test
+    void testFromBytes_WithUnknownVersion_ShouldFail() {
+        byte[] bytes = new ProConnectPrincipal("user123", null, null, null, null, null).toBytes();
+        bytes[0] = 42;
+
+        assertThrows(InvalidObjectException.class, () -> ProConnectPrincipal.fromBytes(bytes));
+    }
+
+    private static Map<String, Object> userInfo() {
+        Map<String, Object> userInfo = new HashMap<>();
+        userInfo.put("sub", "user123");
+        userInfo.put("email", "jean.dupont@example.gouv.fr");
+        userInfo.put("given_name", "Jean");
+        userInfo.put("usual_name", "Dupont");
+        userInfo.put("siret", "21340126800130");
+        userInfo.put("uid", "1234");
+        userInfo.put("idp_id", "71144ab3-ee1a-4401-b7b3-79b44f7daeeb");
+        userInfo.put("aud", List.of("client-id"));
+        userInfo.put("iss", "https://fca.integ01.dev-agentconnect.fr/api/v2");
+        userInfo.put("iat", 1704103200L);
+        userInfo.put("exp", 1704110400L);
+        return userInfo;
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package fr.gouv.dnum.proconnect.web.token;
+
+import com.sun.net.httpserver.HttpServer;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadata;
+import fr.gouv.dnum.proconnect.web.oidc.OidcMetadataProvider;
+import fr.gouv.dnum.proconnect.web.resilience.OutboundGuards;
+import fr.gouv.dnum.proconnect.web.response.BodyResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestTokenRefreshService {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T10:00:00Z");
+    private static final String REFRESHED = "{\"access_token\":\"at-2\",\"refresh_token\":\"rt-2\","
+            + "\"token_type\":\"Bearer\",\"expires_in\":60}";
+
+    private final AtomicInteger refreshCalls = new AtomicInteger();
+    private final AtomicInteger lastRequestHadRefreshToken = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private HttpServer server;
+    private TokenRefreshService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/token", exchange -> {
+            refreshCalls.incrementAndGet();
+            String form = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (form.contains("grant_type=refresh_token") && form.contains("refresh_token=rt-1")) {
+                lastRequestHadRefreshToken.incrementAndGet();
+            }
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = REFRESHED.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        OidcMetadata defaults = OidcMetadata.defaults();
+        OidcMetadata local = new OidcMetadata(defaults.issuer(), defaults.authorizationEndpoint(),
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/token", defaults.userinfoEndpoint(),
+                defaults.endSessionEndpoint(), defaults.jwksUri(), defaults.idTokenSigningAlgValuesSupported(),
+                defaults.userinfoSigningAlgValuesSupported());
+        service = new TokenRefreshService(new RestTemplate(), OidcMetadataProvider.fixed(local), registry,
+                OutboundGuards.defaults(registry), Duration.ofSeconds(30), true, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testGetAccessToken_WhenStillValid_ShouldNotRefresh() throws Exception {
+        release.countDown();
+        MockHttpSession session = sessionWithTokens(3600);
+
+        assertEquals("at-1", service.getAccessToken(session));
+        assertEquals(0, refreshCalls.get());
+    }
+
+    @Test
+    void testGetAccessToken_WhenExpiring_ShouldShareOneRefreshPerSession() throws Exception {
+        MockHttpSession session = sessionWithTokens(10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> service.getAccessToken(session)));
+            }
+            // laisser les requêtes concurrentes se joindre au renouvellement en cours
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("at-2", result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, refreshCalls.get());
+        assertEquals(1, lastRequestHadRefreshToken.get());
+        TokenSet tokens = (TokenSet) session.getAttribute(TokenRefreshService.SESSION_TOKENS);
+        assertEquals("rt-2", tokens.refreshToken());
+        assertEquals("id-1", tokens.idToken(), "L'ID token est conservé s'il n'est pas renvoyé");
+        assertEquals("at-2", session.getAttribute(TokenRefreshService.SESSION_ACCESS_TOKEN));
+        assertEquals(1, registry.get("proconnect.token.refresh").tag("outcome", "success").timer().count());
+    }
+
+    private MockHttpSession sessionWithTokens(long expiresIn) {
+        BodyResponse response = new BodyResponse();
+        response.setAccessToken("at-1");
+        response.setRefreshToken("rt-1");
+        response.setIdToken("id-1");
+        response.setExpiresIn(expiresIn);
+        MockHttpSession session = new MockHttpSession();
+        service.store(session, response);
+        return session;
+    }
+}
@@ -0,0 +1,82 @@
+package fr.gouv.dnum.proconnect.web.userinfo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestUserInfoCache {
+
+    private final MutableClock clock = new MutableClock();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final UserInfoCache cache = new UserInfoCache(2, Duration.ofMinutes(10), clock, registry);
+
+    @Test
+    void testGet_ShouldExpireWithAccessTokenLifetime() {
+        cache.put("sub-1", Map.of("sub", "sub-1", "email", "user@example.com"), Duration.ofSeconds(60));
+
+        assertEquals("user@example.com", cache.get("sub-1").get("email"));
+        clock.advance(Duration.ofSeconds(60));
+        assertNull(cache.get("sub-1"));
+
+        assertEquals(1.0, registry.get("proconnect.userinfo.cache").tag("result", "hit").counter().count());
+        assertEquals(1.0, registry.get("proconnect.userinfo.cache").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testGet_ShouldNotOutliveMaxTtl() {
+        cache.put("sub-1", Map.of("sub", "sub-1"), Duration.ofHours(1));
+
+        clock.advance(Duration.ofMinutes(10));
+        assertNull(cache.get("sub-1"));
+    }
+
+    @Test
+    void testPut_ShouldEvictOldestBeyondMaxSize() {
+        cache.put("sub-1", Map.of("sub", "sub-1"), null);
+        cache.put("sub-2", Map.of("sub", "sub-2"), null);
+        cache.put("sub-3", Map.of("sub", "sub-3"), null);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("sub-1"));
+        assertNotNull(cache.get("sub-3"));
+    }
+
+    @Test
+    void testInvalidate_ShouldRemoveEntry() {
+        cache.put("sub-1", Map.of("sub", "sub-1"), null);
+        cache.invalidate("sub-1");
+
+        assertNull(cache.get("sub-1"));
+        assertNull(UserInfoCache.disabled().get("sub-1"));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}